@@ -0,0 +1,130 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+// Background analysis for the GUI: searches a position without limit on its own daemon thread and
+// keeps the best few lines as text. analyze() switches to a new position at once, stopping the
+// search in progress; the transposition table is kept, so after a move the engine finds most of
+// what it already worked out.
+//
+// The search thread never touches Swing. It only swaps in the latest text, and the GUI collects
+// it with takeText() from a Swing timer, so however fast iterations complete the event thread
+// does at most one update per timer tick.
+public class Analyzer implements Runnable {
+    // Moves shown from each line.
+    static final int PV_MOVES = 8;
+
+    private final int lines;
+    private final TranspositionTable tt;
+    private final SearchOptions options = new SearchOptions();
+    private final ClassicalEvaluator evaluator = new ClassicalEvaluator();
+    private final AtomicReference<String> text = new AtomicReference<String>();
+    private final Thread thread;
+
+    // Guarded by this.
+    private Position pending;
+    private Search current;
+    private boolean closed;
+
+    public Analyzer(int lines, int hashMegabytes) {
+        this.lines = lines;
+        tt = TranspositionTable.withMegabytes(hashMegabytes);
+        thread = new Thread(this, "analysis");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Starts analysing a copy of p, abandoning whatever was being analysed.
+    public synchronized void analyze(Position p) {
+        pending = new Position();
+        pending.copyFrom(p);
+        if (current != null) current.stop();
+        notifyAll();
+    }
+
+    // Stops analysing until the next analyze().
+    public synchronized void pause() {
+        pending = null;
+        if (current != null) {
+            current.stop();
+            current = null;
+        }
+    }
+
+    // Stops the search thread for good.
+    public synchronized void close() {
+        closed = true;
+        pause();
+        notifyAll();
+    }
+
+    // The text of the latest completed iteration, or null if there is nothing new since the last
+    // call.
+    public String takeText() {
+        return text.getAndSet(null);
+    }
+
+    public void run() {
+        while (true) {
+            final Position p;
+            final Search search;
+            synchronized (this) {
+                try {
+                    while (pending == null && !closed) wait();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) return;
+                p = pending;
+                pending = null;
+                p.setEvaluator(evaluator);
+                search = new Search(p, tt, options);
+                current = search;
+            }
+            if (!p.hasLegalMove()) {
+                if (!isStale(search)) text.set(p.inCheck() ? " Checkmate." : " Stalemate.");
+                continue;
+            }
+            search.setMultiPv(lines);
+            search.setListener(new SearchListener() {
+                public void iterationDone(int depth, int score, long nodes, long nanos, int[] pv, int pvLength) {
+                    // A stop that came before the search started was cleared by it; catch it here,
+                    // and show nothing from a search that has been paused or replaced.
+                    if (isStale(search)) {
+                        search.stop();
+                        return;
+                    }
+                    text.set(describe(p, search, depth, nodes, nanos));
+                }
+            });
+            search.search(Search.MAX_PLY);
+        }
+    }
+
+    // True once search is no longer the one the GUI wants: paused, replaced or closed.
+    private synchronized boolean isStale(Search search) {
+        return current != search || pending != null || closed;
+    }
+
+    // Depth, nodes and speed, then one line per PV: its score from White's point of view and its
+    // first moves.
+    private static String describe(Position p, Search search, int depth, long nodes, long nanos) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(" Depth %d  %d knodes  %.0f kn/s%n", depth, nodes / 1000,
+                nanos > 0 ? nodes / (nanos / 1e6) : 0.0));
+        for (int i = 0; i < search.getLineCount(); i++) {
+            int score = search.getLineScore(i);
+            sb.append(String.format(" %6s ", Annotator.formatScore(p.whiteToMove() ? score : -score)));
+            int[] line = search.getLine(i);
+            int shown = Math.min(line.length, PV_MOVES);
+            for (int k = 0; k < shown; k++) {
+                if (p.whiteToMove() || k == 0) {
+                    sb.append(p.getFullmoveNumber()).append(p.whiteToMove() ? "." : "...");
+                }
+                sb.append(San.format(p, line[k])).append(' ');
+                p.makeMove(line[k]);
+            }
+            for (int k = shown - 1; k >= 0; k--) p.unmakeMove(line[k]);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Batch annotator: runs the engine over every position of every game in a PGN file and writes the
+// games back with the evaluation after each move and ?!, ? or ?? on moves that lose ground, plus
+// the engine's choice for those. Games are spread over a work-stealing pool; every worker thread
+// keeps its own transposition table and evaluator for all the games it handles, and the output
+// keeps the input order.
+//
+// Usage: java Annotator <in.pgn> <out.pgn> [-depth n | -nodes n] [-threads n] [-hash mb]
+public class Annotator {
+    // Centipawns lost by a move, from the mover's point of view, for each mark.
+    static final int DUBIOUS = 60;
+    static final int MISTAKE = 150;
+    static final int BLUNDER = 300;
+
+    private final int depth;
+    private final long nodes;
+    private final int hashMegabytes;
+    private final SearchOptions options = new SearchOptions();
+    private final ThreadLocal<TranspositionTable> tables = new ThreadLocal<TranspositionTable>();
+    private final ThreadLocal<ClassicalEvaluator> evaluators = new ThreadLocal<ClassicalEvaluator>();
+
+    // Pre-condition: nodes is Long.MAX_VALUE to search every position to depth, otherwise depth
+    // is normally Search.MAX_PLY and each position gets nodes nodes.
+    public Annotator(int depth, long nodes, int hashMegabytes) {
+        this.depth = depth;
+        this.nodes = nodes;
+        this.hashMegabytes = hashMegabytes;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length < 2) {
+            System.out.println("Usage: java Annotator <in.pgn> <out.pgn> [-depth n | -nodes n] [-threads n] [-hash mb]");
+            return;
+        }
+        int depth = 8;
+        long nodes = Long.MAX_VALUE;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hash = 16;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("-depth")) depth = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-nodes")) {
+                nodes = Long.parseLong(args[++i]);
+                depth = Search.MAX_PLY;
+            } else if (args[i].equals("-threads")) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-hash")) hash = Integer.parseInt(args[++i]);
+        }
+        long start = System.nanoTime();
+        int games;
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+                BufferedWriter out = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            games = new Annotator(depth, nodes, hash).annotate(new PgnReader(in), out, threads);
+        }
+        System.out.printf("%d games annotated in %.1f s%n", games, (System.nanoTime() - start) / 1e9);
+    }
+
+    // Annotates every game from in onto out using threads workers. Returns the number of games.
+    public int annotate(PgnReader in, Writer out, int threads) throws IOException, InterruptedException,
+            ExecutionException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>>();
+        int games = 0;
+        try {
+            PgnReader.Game game;
+            while ((game = in.next()) != null) {
+                final PgnReader.Game g = game;
+                pending.add(pool.submit(new Callable<String>() {
+                    public String call() {
+                        return annotate(g);
+                    }
+                }));
+                games++;
+                // Enough games in flight to keep every worker busy, few enough to bound memory.
+                while (pending.size() > 4 * threads) out.write(pending.poll().get());
+            }
+            while (!pending.isEmpty()) out.write(pending.poll().get());
+        } finally {
+            pool.shutdownNow();
+        }
+        return games;
+    }
+
+    // Returns the annotated PGN text of one game.
+    public String annotate(PgnReader.Game game) {
+        TranspositionTable tt = tables.get();
+        if (tt == null) {
+            tt = TranspositionTable.withMegabytes(hashMegabytes);
+            tables.set(tt);
+        }
+        ClassicalEvaluator evaluator = evaluators.get();
+        if (evaluator == null) {
+            evaluator = new ClassicalEvaluator();
+            evaluators.set(evaluator);
+        }
+
+        Position p = game.startPosition();
+        p.setEvaluator(evaluator);
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, String> tag : game.tags.entrySet()) {
+            text.append('[').append(tag.getKey()).append(" \"").append(tag.getValue().replace("\\", "\\\\")
+                    .replace("\"", "\\\"")).append("\"]\n");
+        }
+        if (!game.tags.isEmpty()) text.append('\n');
+
+        StringBuilder moves = new StringBuilder();
+        int[] best = new int[1];
+        int score = evaluate(p, tt, best);
+        for (int i = 0; i < game.moves.size(); i++) {
+            int move = San.parse(p, game.moves.get(i));
+            if (move == Position.NO_MOVE) {
+                moves.append("{illegal move ").append(game.moves.get(i)).append("} ");
+                break;
+            }
+            boolean white = p.whiteToMove();
+            if (white || i == 0) {
+                moves.append(p.getFullmoveNumber()).append(white ? ". " : "... ");
+            }
+            String san = San.format(p, move);
+            String bestSan = best[0] != Position.NO_MOVE ? San.format(p, best[0]) : null;
+            int bestScore = score;
+            p.makeMove(move);
+            int bestReply = evaluate(p, tt, best);
+            score = bestReply;
+            // Both scores are from the mover's point of view once the reply's is negated.
+            int loss = bestScore + bestReply;
+            String mark = loss >= BLUNDER ? "??" : loss >= MISTAKE ? "?" : loss >= DUBIOUS ? "?!" : "";
+            moves.append(san).append(mark).append(" {").append(formatScore(white ? -bestReply : bestReply));
+            if (!mark.isEmpty() && bestSan != null && !bestSan.equals(san)) {
+                moves.append(", best ").append(bestSan).append(' ').append(formatScore(white ? bestScore : -bestScore));
+            }
+            moves.append("} ");
+        }
+        moves.append(game.result);
+        wrap(moves, text);
+        text.append("\n\n");
+        return text.toString();
+    }
+
+    // Scores p for the side to move and stores the engine's move in best[0] (NO_MOVE if the game
+    // is over there).
+    private int evaluate(Position p, TranspositionTable tt, int[] best) {
+        best[0] = Position.NO_MOVE;
+        if (!p.hasLegalMove()) return p.inCheck() ? -Search.MATE : 0;
+        if (p.isThreefoldRepetition() || p.isFiftyMoveDraw()) return 0;
+        Search search = new Search(p, tt, options);
+        search.setNodeLimit(nodes);
+        best[0] = search.search(depth);
+        return search.getScore();
+    }
+
+    // White's point of view: +0.35, -1.20, #3 (White mates in 3), #-2.
+    static String formatScore(int score) {
+        if (Math.abs(score) >= Search.MATE_BOUND) {
+            int plies = Search.MATE - Math.abs(score);
+            if (plies == 0) return "mate";
+            int moves = (plies + 1) / 2;
+            return score > 0 ? "#" + moves : "#-" + moves;
+        }
+        return String.format("%+.2f", score / 100.0);
+    }
+
+    // Appends the movetext to text in lines of at most 79 characters.
+    private static void wrap(StringBuilder movetext, StringBuilder text) {
+        int lineStart = text.length();
+        for (String word : movetext.toString().split(" ")) {
+            if (text.length() > lineStart && text.length() - lineStart + 1 + word.length() > 79) {
+                text.append('\n');
+                lineStart = text.length();
+            } else if (text.length() > lineStart) {
+                text.append(' ');
+            }
+            text.append(word);
+        }
+    }
+}
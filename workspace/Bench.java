@@ -0,0 +1,71 @@
+// Fixed-depth benchmark over a small suite of positions, for A/B testing the selective search.
+// For every position it prints the time and nodes needed to complete each depth, then the totals
+// per depth over the whole suite with the effective branching factor (how many times more nodes
+// each extra ply costs).
+//
+// Usage: java Bench [depth] [-null] [-lmr] [-futility] [-razoring] [-aspiration] [-see]
+// where each -name switches that part of the search off.
+public class Bench {
+    static final String[] SUITE = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - - 0 1",
+        "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w - - 2 3",
+        "rnbqkb1r/pp2pppp/3p1n2/8/3NP3/8/PPP2PPP/RNBQKB1R w - - 1 5",
+        "r2qk2r/ppp2ppp/2npbn2/2b1p3/2B1P3/2NP1N2/PPP2PPP/R1BQK2R w - - 2 7",
+        "r1b1k2r/pp1nqppp/2p1pn2/3p4/1bPP4/2NBPN2/PP3PPP/R1BQK2R w - - 4 8",
+        "4k3/pp3ppp/2p5/3p4/3P4/2P5/PP3PPP/4K3 w - - 0 1",
+        "2r3k1/5ppp/p3p3/1p1n4/3P4/P3BN2/1P3PPP/2R3K1 b - - 0 1",
+        "8/5k2/3p4/1p1Pp2p/pP2Pp1P/P4P1K/8/8 b - - 0 1",
+    };
+
+    public static void main(String[] args) {
+        int depth = 8;
+        SearchOptions options = new SearchOptions();
+        for (String arg : args) {
+            if (arg.startsWith("-")) {
+                if (!options.disable(arg.substring(1))) {
+                    System.out.println("Unknown option " + arg);
+                    return;
+                }
+            } else {
+                depth = Integer.parseInt(arg);
+            }
+        }
+        System.out.println("Search: " + options + ", depth " + depth);
+
+        final long[] depthNodes = new long[depth + 1];
+        final long[] depthNanos = new long[depth + 1];
+        long totalNodes = 0;
+        long totalNanos = 0;
+        for (String fen : SUITE) {
+            Position p = Position.fromFen(fen);
+            Search search = new Search(p, TranspositionTable.withMegabytes(16), options);
+            final long[] previousNodes = {0};
+            search.setListener(new SearchListener() {
+                public void iterationDone(int d, int score, long nodes, long nanos, int[] pv, int n) {
+                    // Nodes for this iteration only, time from the start of the search.
+                    depthNodes[d] += nodes - previousNodes[0];
+                    depthNanos[d] += nanos;
+                    previousNodes[0] = nodes;
+                }
+            });
+            long start = System.nanoTime();
+            int move = search.search(depth);
+            long nanos = System.nanoTime() - start;
+            totalNodes += search.getNodes();
+            totalNanos += nanos;
+            System.out.printf("%-70s %s %6d cp %10d nodes %8.1f ms%n", fen, Position.moveName(move),
+                    search.getScore(), search.getNodes(), nanos / 1e6);
+        }
+
+        System.out.println();
+        System.out.println("depth      nodes  time-to-depth  branching");
+        for (int d = 1; d <= depth; d++) {
+            String ebf = d > 1 && depthNodes[d - 1] > 0
+                    ? String.format("%.2f", (double) depthNodes[d] / depthNodes[d - 1]) : "-";
+            System.out.printf("%5d %10d %11.1f ms %10s%n", d, depthNodes[d], depthNanos[d] / 1e6, ebf);
+        }
+        System.out.printf("total %d nodes in %.1f ms, %.0f nodes/s, average branching factor %.2f%n",
+                totalNodes, totalNanos / 1e6, totalNodes / (totalNanos / 1e9),
+                Math.pow((double) depthNodes[depth] / depthNodes[1], 1.0 / (depth - 1)));
+    }
+}
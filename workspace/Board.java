@@ -13,21 +13,10 @@ import javax.swing.*;
 // Implements the chess board and handles piece movement
 @SuppressWarnings("serial")
 public class Board extends JPanel implements MouseListener, MouseMotionListener {
-    private static final String RESOURCES_WROOK_PNG = "wrook.png";
-    private static final String RESOURCES_BROOK_PNG = "brook.png";
-    private static final String RESOURCES_BKNIGHT_PNG = "bknight.png";
-    private static final String RESOURCES_WKNIGHT_PNG = "wknight.png";
-    private static final String RESOURCES_BBISHOP_PNG = "bbishop.png";
-    private static final String RESOURCES_WBISHOP_PNG = "wbishop.png";
-    private static final String RESOURCES_BPAWN_PNG = "bpawn.png";
-    private static final String RESOURCES_WPAWN_PNG = "wpawn.png";
-    private static final String RESOURCES_BQUEEN_PNG = "bqueen.png";
-    private static final String RESOURCES_WQUEEN_PNG = "wqueen.png";
-    private static final String RESOURCES_BKING_PNG = "bking.png";
-    private static final String RESOURCES_WKING_PNG = "wking.png";
-
     private final Square[][] board;
     private final GameWindow g;
+    // Headless mirror of the squares, kept in step with every move for the game-over checks.
+    private final Position position;
 
     private boolean whiteTurn;
     private Piece currPiece;
@@ -36,6 +25,15 @@ public class Board extends JPanel implements MouseListener, MouseMotionListener
     private int currX;
     private int currY;
 
+    // Every move played, for take-backs: moves[0..historyLength-1] with the piece each captured
+    // (null if none) and its SAN. The board shows the position after the first ply of them; the
+    // rest can be redone until a different move is played.
+    private int[] moves = new int[64];
+    private Piece[] captured = new Piece[64];
+    private String[] moveNames = new String[64];
+    private int historyLength;
+    private int ply;
+
     public Board(GameWindow g) {
         this.g = g;
         board = new Square[8][8];
@@ -54,6 +52,7 @@ public class Board extends JPanel implements MouseListener, MouseMotionListener
 }
 
 
+        position = Position.startingPosition();
         initializePieces();
 
         this.setPreferredSize(new Dimension(400, 400));
@@ -64,40 +63,11 @@ public class Board extends JPanel implements MouseListener, MouseMotionListener
         whiteTurn = true;
     }
 
-    // Sets up rooks for each player
+    // Sets up both sides as in position, with the shared Piece instances.
     private void initializePieces() {
-        board[0][0].put(new Rook(false, RESOURCES_BROOK_PNG)); // Black Rook
-        board[0][1].put(new Knight(false, RESOURCES_BKNIGHT_PNG));//Black Knight
-        board[0][2].put(new Bishop(false, RESOURCES_BBISHOP_PNG)); // Black Bishop
-        board[0][3].put(new Queen(false, RESOURCES_BQUEEN_PNG)); // Black Queen
-        board[0][4].put(new King(false, RESOURCES_BKING_PNG)); // Black King
-        board[0][5].put(new Bishop(false, RESOURCES_BBISHOP_PNG)); // Black Bishop
-        board[0][6].put(new Knight(false, RESOURCES_BKNIGHT_PNG)); // Black Knight
-        board[0][7].put(new Rook(false, RESOURCES_BROOK_PNG)); // Black Rook
-        board[1][0].put(new Pawn(false, RESOURCES_BPAWN_PNG)); // Black Pawn
-        board[1][1].put(new Pawn(false, RESOURCES_BPAWN_PNG)); // Black Pawn
-        board[1][2].put(new Pawn(false, RESOURCES_BPAWN_PNG)); // Black Pawn
-        board[1][3].put(new Pawn(false, RESOURCES_BPAWN_PNG)); // Black Pawn
-        board[1][4].put(new Pawn(false, RESOURCES_BPAWN_PNG)); // Black Pawn
-        board[1][5].put(new Pawn(false, RESOURCES_BPAWN_PNG)); // Black Pawn
-        board[1][6].put(new Pawn(false, RESOURCES_BPAWN_PNG)); // Black Pawn
-        board[1][7].put(new Pawn(false, RESOURCES_BPAWN_PNG)); // Black Pawn
-        board[7][0].put(new Rook(true, RESOURCES_WROOK_PNG));  // White Rook
-        board[7][1].put(new Knight(true, RESOURCES_WKNIGHT_PNG)); // White Knight
-        board[7][2].put(new Bishop(true, RESOURCES_WBISHOP_PNG)); // White Bishop
-        board[7][3].put(new Queen(true, RESOURCES_WQUEEN_PNG)); // White Queen
-        board[7][4].put(new King(true, RESOURCES_WKING_PNG)); // White King
-        board[7][5].put(new Bishop(true, RESOURCES_WBISHOP_PNG)); // White Bishop
-        board[7][6].put(new Knight(true, RESOURCES_WKNIGHT_PNG)); // White Knight
-        board[7][7].put(new Rook(true, RESOURCES_WROOK_PNG));  // White Rook
-        board[6][0].put(new Pawn(true, RESOURCES_WPAWN_PNG)); // White Pawn
-        board[6][1].put(new Pawn(true, RESOURCES_WPAWN_PNG)); // White Pawn
-        board[6][2].put(new Pawn(true, RESOURCES_WPAWN_PNG)); // White Pawn
-        board[6][3].put(new Pawn(true, RESOURCES_WPAWN_PNG)); // White Pawn
-        board[6][4].put(new Pawn(true, RESOURCES_WPAWN_PNG)); // White Pawn
-        board[6][5].put(new Pawn(true, RESOURCES_WPAWN_PNG)); // White Pawn
-        board[6][6].put(new Pawn(true, RESOURCES_WPAWN_PNG)); // White Pawn
-        board[6][7].put(new Pawn(true, RESOURCES_WPAWN_PNG)); // White Pawn
+        for (int sq = 0; sq < 64; sq++) {
+            if (position.pieceAt(sq) != Position.EMPTY) squareAt(sq).put(Piece.of(position.pieceAt(sq)));
+        }
     }
 
     public Square[][] getSquareArray() {
@@ -184,6 +154,13 @@ return;
             } else {
                 // Move is valid
                 whiteTurn = !whiteTurn;
+                int move = Position.move(
+                        Position.square(originalFromSquare.getRow(), originalFromSquare.getCol()),
+                        Position.square(endSquare.getRow(), endSquare.getCol()));
+                record(move, originalEndPiece, San.format(position, move));
+                position.makeMove(move);
+                g.moveMade(currPiece.getColor());
+                checkGameOver(currPiece.getColor());
             }
         }
     }
@@ -197,6 +174,100 @@ return;
 
 
 
+    // Ends the game if the side now to move has no legal reply: checkmate if it is in check,
+    // stalemate otherwise. Also ends it on a threefold repetition or under the fifty-move rule.
+    private void checkGameOver(boolean moverColor) {
+        if (!position.hasLegalMove()) {
+            if (position.inCheck()) {
+                g.checkmateOccurred(moverColor);
+            } else {
+                g.drawOccurred("stalemate");
+            }
+        } else if (position.isThreefoldRepetition()) {
+            g.drawOccurred("threefold repetition");
+        } else if (position.isFiftyMoveDraw()) {
+            g.drawOccurred("the fifty-move rule");
+        }
+    }
+
+    public Position getPosition() {
+        return position;
+    }
+
+    // A new headless copy of the current position, with its repetition history, that another
+    // thread may search or play on while the game goes on here.
+    public Position toPosition() {
+        Position copy = new Position();
+        copy.copyFrom(position);
+        return copy;
+    }
+
+    // Adds a move played at the current ply, dropping any moves that could have been redone.
+    private void record(int move, Piece capturedPiece, String name) {
+        if (ply == moves.length) {
+            moves = java.util.Arrays.copyOf(moves, ply * 2);
+            captured = java.util.Arrays.copyOf(captured, ply * 2);
+            moveNames = java.util.Arrays.copyOf(moveNames, ply * 2);
+        }
+        moves[ply] = move;
+        captured[ply] = capturedPiece;
+        moveNames[ply] = name;
+        ply++;
+        historyLength = ply;
+    }
+
+    public int getPly() {
+        return ply;
+    }
+
+    public int getHistoryLength() {
+        return historyLength;
+    }
+
+    // The SAN of the move played at ply i (0 is White's first move).
+    public String getMoveName(int i) {
+        return moveNames[i];
+    }
+
+    public void undo() {
+        goToPly(ply - 1);
+    }
+
+    public void redo() {
+        goToPly(ply + 1);
+    }
+
+    // Pre-condition: 0 <= target <= getHistoryLength(); otherwise nothing happens.
+    // Post-condition: the board shows the position after target plies. Every step is one unmake
+    // or make on both the squares and the Position, which keeps its repetition history, so even a
+    // jump across a few hundred plies takes microseconds.
+    public void goToPly(int target) {
+        if (target < 0 || target > historyLength || target == ply) return;
+        while (ply > target) {
+            ply--;
+            Square from = squareAt(Position.from(moves[ply]));
+            Square to = squareAt(Position.to(moves[ply]));
+            from.put(to.removePiece());
+            to.put(captured[ply]);
+            position.unmakeMove(moves[ply]);
+        }
+        while (ply < target) {
+            Square from = squareAt(Position.from(moves[ply]));
+            Square to = squareAt(Position.to(moves[ply]));
+            to.put(from.removePiece());
+            position.makeMove(moves[ply]);
+            ply++;
+        }
+        whiteTurn = position.whiteToMove();
+        currPiece = null;
+        g.historyMoved();
+        repaint();
+    }
+
+    private Square squareAt(int sq) {
+        return board[sq >> 3][sq & 7];
+    }
+
     public boolean isInCheck(boolean kingColor) {
     Square[][] squares = this.getSquareArray();
     Square kingSquare = null;
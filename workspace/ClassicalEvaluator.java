@@ -0,0 +1,254 @@
+// Material plus piece-square tables, blended between a middlegame and an endgame score by how
+// much material is left ("tapered" evaluation). All three sums are updated by the add/remove
+// callbacks from Position, so evaluate() is just the blend and costs the same in every position.
+// Pawn-structure terms (doubled, isolated and passed pawns) are cached in a PawnHashTable.
+public class ClassicalEvaluator implements Evaluator {
+    // Game phase: 24 with all minor and major pieces on the board, 0 with only kings and pawns.
+    static final int MAX_PHASE = 24;
+    static final int[] PHASE = {0, 0, 1, 1, 2, 4, 0};
+
+    // Indexed by Position piece type. The Rook only slides three squares, so it is worth a lot
+    // less than a normal rook.
+    static final int[] MG_VALUE = {0, 100, 320, 330, 380, 950, 0};
+    static final int[] EG_VALUE = {0, 120, 300, 310, 420, 950, 0};
+
+    // Tables are written from white's point of view with row 0 at the top, the same layout as
+    // Position squares; black pieces look them up on the mirrored square (sq ^ 56). There is no
+    // promotion, so a pawn on the far row is stuck and gets a penalty.
+    private static final int[] PAWN_MG = {
+        -20,-20,-20,-20,-20,-20,-20,-20,
+         10, 10, 15, 20, 20, 15, 10, 10,
+         10, 10, 20, 30, 30, 20, 10, 10,
+          5,  5, 10, 25, 25, 10,  5,  5,
+          0,  0,  0, 20, 20,  0,  0,  0,
+          5, -5,-10,  0,  0,-10, -5,  5,
+          5, 10, 10,-20,-20, 10, 10,  5,
+          0,  0,  0,  0,  0,  0,  0,  0};
+    private static final int[] PAWN_EG = {
+        -20,-20,-20,-20,-20,-20,-20,-20,
+         20, 20, 20, 20, 20, 20, 20, 20,
+         15, 15, 15, 15, 15, 15, 15, 15,
+         10, 10, 10, 10, 10, 10, 10, 10,
+          5,  5,  5,  5,  5,  5,  5,  5,
+          0,  0,  0,  0,  0,  0,  0,  0,
+          0,  0,  0,  0,  0,  0,  0,  0,
+          0,  0,  0,  0,  0,  0,  0,  0};
+    private static final int[] KNIGHT = {
+        -50,-40,-30,-30,-30,-30,-40,-50,
+        -40,-20,  0,  0,  0,  0,-20,-40,
+        -30,  0, 10, 15, 15, 10,  0,-30,
+        -30,  5, 15, 20, 20, 15,  5,-30,
+        -30,  0, 15, 20, 20, 15,  0,-30,
+        -30,  5, 10, 15, 15, 10,  5,-30,
+        -40,-20,  0,  5,  5,  0,-20,-40,
+        -50,-40,-30,-30,-30,-30,-40,-50};
+    private static final int[] BISHOP = {
+        -20,-10,-10,-10,-10,-10,-10,-20,
+        -10,  0,  0,  0,  0,  0,  0,-10,
+        -10,  0,  5, 10, 10,  5,  0,-10,
+        -10,  5,  5, 10, 10,  5,  5,-10,
+        -10,  0, 10, 10, 10, 10,  0,-10,
+        -10, 10, 10, 10, 10, 10, 10,-10,
+        -10,  5,  0,  0,  0,  0,  5,-10,
+        -20,-10,-10,-10,-10,-10,-10,-20};
+    // A three-square rook needs to get into play, so it is pulled towards the centre.
+    private static final int[] ROOK = {
+          0,  0,  5,  5,  5,  5,  0,  0,
+         10, 15, 15, 15, 15, 15, 15, 10,
+         -5,  5, 10, 10, 10, 10,  5, -5,
+         -5,  5, 10, 15, 15, 10,  5, -5,
+         -5,  5, 10, 15, 15, 10,  5, -5,
+         -5,  0,  5, 10, 10,  5,  0, -5,
+         -5,  0,  0,  5,  5,  0,  0, -5,
+        -10, -5,  0,  5,  5,  0, -5,-10};
+    private static final int[] QUEEN = {
+        -20,-10,-10, -5, -5,-10,-10,-20,
+        -10,  0,  0,  0,  0,  0,  0,-10,
+        -10,  0,  5,  5,  5,  5,  0,-10,
+         -5,  0,  5,  5,  5,  5,  0, -5,
+          0,  0,  5,  5,  5,  5,  0, -5,
+        -10,  5,  5,  5,  5,  5,  0,-10,
+        -10,  0,  5,  0,  0,  0,  0,-10,
+        -20,-10,-10, -5, -5,-10,-10,-20};
+    private static final int[] KING_MG = {
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -20,-30,-30,-40,-40,-30,-30,-20,
+        -10,-20,-20,-20,-20,-20,-20,-10,
+         20, 20,  0,  0,  0,  0, 20, 20,
+         20, 30, 10,  0,  0, 10, 30, 20};
+    private static final int[] KING_EG = {
+        -50,-40,-30,-20,-20,-30,-40,-50,
+        -30,-20,-10,  0,  0,-10,-20,-30,
+        -30,-10, 20, 30, 30, 20,-10,-30,
+        -30,-10, 30, 40, 40, 30,-10,-30,
+        -30,-10, 30, 40, 40, 30,-10,-30,
+        -30,-10, 20, 30, 30, 20,-10,-30,
+        -30,-30,  0,  0,  0,  0,-30,-30,
+        -50,-30,-30,-30,-30,-30,-30,-50};
+
+    // Pawn-structure terms, per pawn. Passed pawn bonuses are indexed by the row as seen from white
+    // (row 1 is one step from the far row); with no promotion they are modest.
+    static final int DOUBLED_MG = -10;
+    static final int DOUBLED_EG = -20;
+    static final int ISOLATED_MG = -10;
+    static final int ISOLATED_EG = -15;
+    static final int[] PASSED_MG = {0, 20, 15, 10, 5, 5, 0, 0};
+    static final int[] PASSED_EG = {0, 40, 30, 20, 12, 8, 0, 0};
+
+    static final int PAWN_HASH_ENTRIES = 1 << 14;
+
+    static final long[] FILE_MASK = new long[8];
+    static final long[] ADJACENT_FILES = new long[8];
+    // PASSED_MASK[0][sq] covers the squares in front of a white pawn on sq, on its own and the
+    // adjacent files, that an enemy pawn must not stand on for it to be passed; [1] is for black.
+    static final long[][] PASSED_MASK = new long[2][64];
+
+    // MG_TABLE[piece][sq] and EG_TABLE[piece][sq] hold material plus placement, signed so that
+    // black pieces count negative, for every Position piece code.
+    static final int[][] MG_TABLE = new int[16][64];
+    static final int[][] EG_TABLE = new int[16][64];
+
+    static {
+        int[][] mg = {null, PAWN_MG, KNIGHT, BISHOP, ROOK, QUEEN, KING_MG};
+        int[][] eg = {null, PAWN_EG, KNIGHT, BISHOP, ROOK, QUEEN, KING_EG};
+        for (int type = Position.PAWN; type <= Position.KING; type++) {
+            for (int sq = 0; sq < 64; sq++) {
+                MG_TABLE[type][sq] = MG_VALUE[type] + mg[type][sq];
+                EG_TABLE[type][sq] = EG_VALUE[type] + eg[type][sq];
+                MG_TABLE[Position.BLACK | type][sq] = -(MG_VALUE[type] + mg[type][sq ^ 56]);
+                EG_TABLE[Position.BLACK | type][sq] = -(EG_VALUE[type] + eg[type][sq ^ 56]);
+            }
+        }
+        for (int col = 0; col < 8; col++) {
+            FILE_MASK[col] = 0x0101010101010101L << col;
+        }
+        for (int col = 0; col < 8; col++) {
+            if (col > 0) ADJACENT_FILES[col] |= FILE_MASK[col - 1];
+            if (col < 7) ADJACENT_FILES[col] |= FILE_MASK[col + 1];
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq >> 3;
+            long files = FILE_MASK[sq & 7] | ADJACENT_FILES[sq & 7];
+            for (int r = 0; r < 8; r++) {
+                long rowMask = 0xFFL << (r * 8);
+                if (r < row) PASSED_MASK[0][sq] |= files & rowMask;
+                if (r > row) PASSED_MASK[1][sq] |= files & rowMask;
+            }
+        }
+    }
+
+    private final PawnHashTable pawns;
+
+    // Running sums from white's point of view.
+    private int mg;
+    private int eg;
+    private int phase;
+
+    public ClassicalEvaluator() {
+        this(new PawnHashTable(PAWN_HASH_ENTRIES));
+    }
+
+    public ClassicalEvaluator(PawnHashTable pawns) {
+        this.pawns = pawns;
+    }
+
+    public PawnHashTable getPawnHashTable() {
+        return pawns;
+    }
+
+    public void reset(Position p) {
+        mg = 0;
+        eg = 0;
+        phase = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            int piece = p.pieceAt(sq);
+            if (piece != Position.EMPTY) pieceAdded(piece, sq);
+        }
+    }
+
+    public void pieceAdded(int piece, int sq) {
+        mg += MG_TABLE[piece][sq];
+        eg += EG_TABLE[piece][sq];
+        phase += PHASE[Position.type(piece)];
+    }
+
+    public void pieceRemoved(int piece, int sq) {
+        mg -= MG_TABLE[piece][sq];
+        eg -= EG_TABLE[piece][sq];
+        phase -= PHASE[Position.type(piece)];
+    }
+
+    public int evaluate(Position p) {
+        int slot = pawnEntry(p);
+        int ph = Math.min(phase, MAX_PHASE);
+        int mgScore = mg + pawns.mg(slot);
+        int egScore = eg + pawns.eg(slot);
+        int score = (mgScore * ph + egScore * (MAX_PHASE - ph)) / MAX_PHASE;
+        return p.whiteToMove() ? score : -score;
+    }
+
+    // Returns the pawn hash slot holding p's pawn structure, computing it on a miss.
+    int pawnEntry(Position p) {
+        long key = p.getPawnKey();
+        int slot = pawns.slot(key);
+        if (pawns.matches(slot, key)) return slot;
+
+        long white = 0;
+        long black = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            int piece = p.pieceAt(sq);
+            if (piece == Position.PAWN) white |= 1L << sq;
+            else if (piece == (Position.BLACK | Position.PAWN)) black |= 1L << sq;
+        }
+        int mgScore = 0;
+        int egScore = 0;
+        long passed = 0;
+        for (long bits = white; bits != 0; bits &= bits - 1) {
+            int sq = Long.numberOfTrailingZeros(bits);
+            int col = sq & 7;
+            int row = sq >> 3;
+            if ((white & ADJACENT_FILES[col]) == 0) {
+                mgScore += ISOLATED_MG;
+                egScore += ISOLATED_EG;
+            }
+            if (Long.bitCount(white & FILE_MASK[col]) > 1) {
+                mgScore += DOUBLED_MG;
+                egScore += DOUBLED_EG;
+            }
+            // A pawn on the far row is stuck, not passed.
+            if (row > 0 && (black & PASSED_MASK[0][sq]) == 0) {
+                passed |= 1L << sq;
+                mgScore += PASSED_MG[row];
+                egScore += PASSED_EG[row];
+            }
+        }
+        for (long bits = black; bits != 0; bits &= bits - 1) {
+            int sq = Long.numberOfTrailingZeros(bits);
+            int col = sq & 7;
+            int row = 7 - (sq >> 3);
+            if ((black & ADJACENT_FILES[col]) == 0) {
+                mgScore -= ISOLATED_MG;
+                egScore -= ISOLATED_EG;
+            }
+            if (Long.bitCount(black & FILE_MASK[col]) > 1) {
+                mgScore -= DOUBLED_MG;
+                egScore -= DOUBLED_EG;
+            }
+            if (row > 0 && (white & PASSED_MASK[1][sq]) == 0) {
+                passed |= 1L << sq;
+                mgScore -= PASSED_MG[row];
+                egScore -= PASSED_EG[row];
+            }
+        }
+        pawns.store(slot, key, mgScore, egScore, passed);
+        return slot;
+    }
+
+    // Squares of all passed pawns of both colours in p, from the pawn hash table.
+    public long passedPawns(Position p) {
+        return pawns.passedPawns(pawnEntry(p));
+    }
+}
@@ -1,35 +1,125 @@
 //I am a clock. Leave me alone! You mess with this file at your own peril!
+//Time is only charged at move boundaries, from System.nanoTime deltas, so a late or dropped
+//display refresh can never lose the player any time. Supports a Fischer increment (added after
+//every completed move) and a Bronstein delay (the first part of each move is not charged).
 public class Clock {
-    private int hh;
-    private int mm;
-    private int ss;
-    
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final long incrementNanos;
+    private final long delayNanos;
+
+    private long remainingNanos;
+    private long startedAt;
+    private boolean running;
+    private boolean flagged;
+
     public Clock(int hh, int mm, int ss) {
-        this.hh = hh;
-        this.mm = mm;
-        this.ss = ss;
+        this(((hh * 60L + mm) * 60L + ss) * 1000L, 0, 0);
     }
-    
+
+    public Clock(long baseMillis, long incrementMillis, long delayMillis) {
+        this.remainingNanos = baseMillis * NANOS_PER_MILLI;
+        this.incrementNanos = incrementMillis * NANOS_PER_MILLI;
+        this.delayNanos = delayMillis * NANOS_PER_MILLI;
+    }
+
+    // Starts this side's time running at the given System.nanoTime reading.
+    public void start(long now) {
+        if (running || flagged) return;
+        startedAt = now;
+        running = true;
+    }
+
+    public void start() {
+        start(System.nanoTime());
+    }
+
+    // Stops this side's time at the given System.nanoTime reading, charging the time used for the
+    // move (less the delay) and then adding the increment if the flag has not fallen.
+    public void stop(long now) {
+        if (!running) return;
+        running = false;
+        remainingNanos -= charged(now);
+        if (remainingNanos <= 0) {
+            remainingNanos = 0;
+            flagged = true;
+        } else {
+            remainingNanos += incrementNanos;
+        }
+    }
+
+    public void stop() {
+        stop(System.nanoTime());
+    }
+
+    // Stops this side's time like stop(now) but without the increment, for when the turn passes
+    // back without a move being completed (a take-back).
+    public void pause(long now) {
+        if (!running) return;
+        stop(now);
+        if (!flagged) remainingNanos -= incrementNanos;
+    }
+
+    private long charged(long now) {
+        long used = now - startedAt;
+        return used > delayNanos ? used - delayNanos : 0;
+    }
+
+    // Sets the time left, e.g. when a game is restored from a journal. Ignored while running.
+    public void setRemainingMillis(long millis) {
+        if (running) return;
+        remainingNanos = millis * NANOS_PER_MILLI;
+        flagged = millis <= 0;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getIncrementMillis() {
+        return incrementNanos / NANOS_PER_MILLI;
+    }
+
+    public long getDelayMillis() {
+        return delayNanos / NANOS_PER_MILLI;
+    }
+
+    // Remaining time in milliseconds as of the given System.nanoTime reading, never negative.
+    public long getRemainingMillis(long now) {
+        long left = running ? remainingNanos - charged(now) : remainingNanos;
+        return left > 0 ? left / NANOS_PER_MILLI : 0;
+    }
+
+    public long getRemainingMillis() {
+        return getRemainingMillis(System.nanoTime());
+    }
+
+    // The System.nanoTime reading at which this clock's flag falls, or Long.MAX_VALUE when stopped.
+    public long getDeadline() {
+        return running ? startedAt + delayNanos + remainingNanos : Long.MAX_VALUE;
+    }
+
+    public boolean outOfTime(long now) {
+        return flagged || (running && remainingNanos - charged(now) <= 0);
+    }
+
     public boolean outOfTime() {
-        return (hh == 0 && mm == 0 && ss == 0);
-    }
-    
-    public void decr() {
-        if (this.mm == 0 && this.ss == 0) {
-            this.ss = 59;
-            this.mm = 59;
-            this.hh--;
-        } else if (this.ss == 0) {
-            this.ss = 59;
-            this.mm--;
-        } else this.ss--;
-    }
-    
-    public String getTime() {
-        String fHrs = String.format("%02d", this.hh);
-        String fMins = String.format("%02d", this.mm);
-        String fSecs = String.format("%02d", this.ss);
+        return outOfTime(System.nanoTime());
+    }
+
+    // Formats the remaining time as hh:mm:ss, switching to tenths of a second in the last ten seconds.
+    public String getTime(long now) {
+        long millis = getRemainingMillis(now);
+        long secs = millis / 1000;
+        String fHrs = String.format("%02d", secs / 3600);
+        String fMins = String.format("%02d", (secs / 60) % 60);
+        String fSecs = String.format("%02d", secs % 60);
         String fTime = fHrs + ":" + fMins + ":" + fSecs;
+        if (millis < 10000) fTime += "." + (millis % 1000) / 100;
         return fTime;
     }
+
+    public String getTime() {
+        return getTime(System.nanoTime());
+    }
 }
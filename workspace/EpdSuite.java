@@ -0,0 +1,216 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Runs the engine over an EPD test suite: every position gives the move(s) to find ("bm") or to
+// avoid ("am"). Positions are searched concurrently with a fixed time or node limit each; for
+// every one it prints whether it was solved, the time and nodes by which the engine settled on a
+// right move for good, and the nodes per second, then the totals over the suite.
+//
+// Usage: java EpdSuite <file.epd> [-time ms | -nodes n] [-threads n] [-hash mb]
+public class EpdSuite {
+    // One line of the suite.
+    static class Entry {
+        final String id;
+        final String fen;
+        final List<Integer> best = new ArrayList<Integer>();
+        final List<Integer> avoid = new ArrayList<Integer>();
+
+        Entry(String id, String fen) {
+            this.id = id;
+            this.fen = fen;
+        }
+
+        boolean isRight(int move) {
+            if (!best.isEmpty() && !best.contains(move)) return false;
+            return !avoid.contains(move);
+        }
+    }
+
+    // The outcome of searching one entry.
+    static class Result {
+        boolean solved;
+        int move;
+        // When the last change to a right move happened (the whole search if never solved).
+        long solutionNanos;
+        long solutionNodes;
+        int solutionDepth;
+        long nodes;
+        long nanos;
+    }
+
+    private final long timeMillis;
+    private final long nodeLimit;
+    private final int hashMegabytes;
+    private final SearchOptions options = new SearchOptions();
+    private final ThreadLocal<TranspositionTable> tables = new ThreadLocal<TranspositionTable>();
+
+    // Pre-condition: timeMillis > 0 for a fixed time per position, otherwise nodeLimit is used.
+    public EpdSuite(long timeMillis, long nodeLimit, int hashMegabytes) {
+        this.timeMillis = timeMillis;
+        this.nodeLimit = nodeLimit;
+        this.hashMegabytes = hashMegabytes;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length < 1) {
+            System.out.println("Usage: java EpdSuite <file.epd> [-time ms | -nodes n] [-threads n] [-hash mb]");
+            return;
+        }
+        long time = 1000;
+        long nodes = Long.MAX_VALUE;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hash = 16;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-time")) time = Long.parseLong(args[++i]);
+            else if (args[i].equals("-nodes")) {
+                nodes = Long.parseLong(args[++i]);
+                time = 0;
+            } else if (args[i].equals("-threads")) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-hash")) hash = Integer.parseInt(args[++i]);
+        }
+
+        List<Entry> entries = new ArrayList<Entry>();
+        int number = 0;
+        for (String line : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            number++;
+            Entry entry = parse(line, number);
+            if (entry == null) System.out.println("Skipping line: " + line);
+            else entries.add(entry);
+        }
+        new EpdSuite(time, nodes, hash).run(entries, threads);
+    }
+
+    // Returns the entry for one EPD line (number names it if it has no id), or null if its
+    // position or moves cannot be read.
+    static Entry parse(String line, int number) {
+        String[] fields = line.split("\\s+", 5);
+        if (fields.length < 4) return null;
+        String fen = fields[0] + " " + fields[1] + " " + fields[2] + " " + fields[3];
+        Position p;
+        try {
+            p = Position.fromFen(fen);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        String id = "#" + number;
+        List<String> best = new ArrayList<String>();
+        List<String> avoid = new ArrayList<String>();
+        if (fields.length == 5) {
+            for (String op : fields[4].split(";")) {
+                op = op.trim();
+                int space = op.indexOf(' ');
+                if (space < 0) continue;
+                String opcode = op.substring(0, space);
+                String operand = op.substring(space + 1).trim();
+                if (opcode.equals("id")) id = operand.replace("\"", "");
+                else if (opcode.equals("bm")) best.addAll(Arrays.asList(operand.split("\\s+")));
+                else if (opcode.equals("am")) avoid.addAll(Arrays.asList(operand.split("\\s+")));
+            }
+        }
+        if (best.isEmpty() && avoid.isEmpty()) return null;
+        Entry entry = new Entry(id, fen);
+        for (String san : best) {
+            int move = San.parse(p, san);
+            if (move == Position.NO_MOVE) return null;
+            entry.best.add(move);
+        }
+        for (String san : avoid) {
+            int move = San.parse(p, san);
+            if (move == Position.NO_MOVE) return null;
+            entry.avoid.add(move);
+        }
+        return entry;
+    }
+
+    // Searches every entry on threads workers and prints the results in suite order.
+    public void run(List<Entry> entries, int threads) throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<Future<Result>>();
+        long start = System.nanoTime();
+        for (final Entry entry : entries) {
+            futures.add(pool.submit(new Callable<Result>() {
+                public Result call() {
+                    return solve(entry);
+                }
+            }));
+        }
+
+        int solved = 0;
+        long totalNodes = 0;
+        long totalNanos = 0;
+        long solutionNanos = 0;
+        System.out.printf("%-20s %-6s %-6s %5s %10s %12s %12s %10s%n", "id", "result", "move", "depth",
+                "time(ms)", "nodes", "total nodes", "nps");
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                Result r = futures.get(i).get();
+                totalNodes += r.nodes;
+                totalNanos += r.nanos;
+                if (r.solved) {
+                    solved++;
+                    solutionNanos += r.solutionNanos;
+                }
+                System.out.printf("%-20s %-6s %-6s %5s %10s %12s %12d %10.0f%n", entry.id, r.solved ? "ok" : "FAIL",
+                        Position.moveName(r.move), r.solved ? Integer.toString(r.solutionDepth) : "-",
+                        r.solved ? String.format("%.1f", r.solutionNanos / 1e6) : "-",
+                        r.solved ? Long.toString(r.solutionNodes) : "-", r.nodes,
+                        r.nanos > 0 ? r.nodes / (r.nanos / 1e9) : 0.0);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        double wall = (System.nanoTime() - start) / 1e9;
+        System.out.println();
+        System.out.printf("solved %d of %d, average time to solution %.1f ms%n", solved, entries.size(),
+                solved > 0 ? solutionNanos / 1e6 / solved : 0.0);
+        System.out.printf("%d nodes, %.0f nodes/s per thread, %.0f nodes/s overall, %.1f s%n", totalNodes,
+                totalNanos > 0 ? totalNodes / (totalNanos / 1e9) : 0.0, totalNodes / wall, wall);
+    }
+
+    // Searches one entry with this thread's transposition table, cleared first so that results
+    // do not depend on which positions the thread happened to search before.
+    Result solve(final Entry entry) {
+        TranspositionTable tt = tables.get();
+        if (tt == null) {
+            tt = TranspositionTable.withMegabytes(hashMegabytes);
+            tables.set(tt);
+        }
+        tt.clear();
+        Position p = Position.fromFen(entry.fen);
+        final Result r = new Result();
+        if (!p.hasLegalMove()) return r;
+        Search search = new Search(p, tt, options);
+        search.setNodeLimit(nodeLimit);
+        if (timeMillis > 0) search.setTimeManager(TimeManager.fixed(timeMillis));
+        search.setListener(new SearchListener() {
+            public void iterationDone(int depth, int score, long nodes, long nanos, int[] pv, int pvLength) {
+                boolean right = pvLength > 0 && entry.isRight(pv[0]);
+                if (right && !r.solved) {
+                    r.solutionDepth = depth;
+                    r.solutionNanos = nanos;
+                    r.solutionNodes = nodes;
+                }
+                r.solved = right;
+            }
+        });
+        long start = System.nanoTime();
+        r.move = search.search(Search.MAX_PLY);
+        r.nanos = System.nanoTime() - start;
+        r.nodes = search.getNodes();
+        r.solved = entry.isRight(r.move);
+        return r;
+    }
+}
@@ -0,0 +1,15 @@
+// Scores positions for the engine. A Position tells its evaluator about every piece it puts on or
+// takes off a square (including during makeMove and unmakeMove), so an implementation can keep its
+// terms up to date as the game goes instead of scanning the whole board for each score.
+public interface Evaluator {
+    // Pre-condition: p is the position this evaluator is attached to.
+    // Post-condition: forgets any incremental state and rebuilds it from the pieces on p.
+    void reset(Position p);
+
+    void pieceAdded(int piece, int sq);
+
+    void pieceRemoved(int piece, int sq);
+
+    // Returns the score in centipawns from the point of view of the side to move in p.
+    int evaluate(Position p);
+}
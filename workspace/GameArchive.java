@@ -0,0 +1,307 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// Compact binary storage for completed games. A move is stored as its rank among the legal moves of
+// its position, where the moves are ranked by a fixed one-ply static evaluation so that the move
+// actually played is usually near the top. The ranks are range coded with an adaptive model over
+// the legal moves only, so a forced move costs nothing and a typical move a few bits.
+//
+// One game record:
+//   flags:byte (1 = starts from a FEN)  white:string  black:string  result:byte (0 *, 1 1-0, 2 0-1, 3 draw)
+//   baseMillis:varint  incrementMillis:varint  delayMillis:varint  [startFen:string]  moveCount:varint
+//   range-coded move ranks
+// where a string is a varint byte count followed by UTF-8. An archive file is MAGIC followed by
+// records, each preceded by its varint length.
+//
+// An instance holds the evaluator used for ranking and is not thread-safe; use one per thread.
+// Usage: java GameArchive <archive file>    lists the games in the archive
+public class GameArchive {
+    static final byte[] MAGIC = {'C', 'H', 'G', 'A', 1};
+    // Adaptive model: the starting counts favour the top ranks, and each coded rank gains INCREMENT.
+    static final int INCREMENT = 32;
+    static final int MAX_TOTAL = 1 << 16;
+
+    private final ClassicalEvaluator evaluator = new ClassicalEvaluator();
+    private final int[] moves = new int[Position.MAX_MOVES];
+    private final int[] scores = new int[Position.MAX_MOVES];
+    private final int[] freq = new int[Position.MAX_MOVES];
+    private int freqTotal;
+
+    public static void main(String[] args) throws IOException {
+        GameArchive.Reader reader = new GameArchive.Reader(Files.newInputStream(Paths.get(args[0])));
+        GameArchive codec = new GameArchive();
+        long games = 0;
+        long moves = 0;
+        long bytes = 0;
+        byte[] raw;
+        while ((raw = reader.nextRaw()) != null) {
+            GameRecord r = codec.decode(raw);
+            System.out.println(r.white + " - " + r.black + " " + r.result + " " + r.moves.length + " moves");
+            games++;
+            moves += r.moves.length;
+            bytes += raw.length;
+        }
+        reader.close();
+        System.out.printf("%d games, %d moves, %.2f bytes per game, %.2f bits per move%n", games, moves,
+                (double) bytes / Math.max(1, games), bytes * 8.0 / Math.max(1, moves));
+    }
+
+    // Fills moves with the legal moves of p, best first, and returns how many there are. The order
+    // depends only on the position, so the encoder and the decoder agree on it.
+    public int rankMoves(Position p, int[] moves) {
+        if (p.getEvaluator() != evaluator) p.setEvaluator(evaluator);
+        int n = p.generateLegalMoves(moves);
+        for (int i = 0; i < n; i++) {
+            p.makeMove(moves[i]);
+            scores[i] = -p.evaluate();
+            p.unmakeMove(moves[i]);
+        }
+        // Insertion sort, highest score first, ties by move number.
+        for (int i = 1; i < n; i++) {
+            int m = moves[i];
+            int s = scores[i];
+            int j = i - 1;
+            while (j >= 0 && (scores[j] < s || (scores[j] == s && moves[j] > m))) {
+                moves[j + 1] = moves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves[j + 1] = m;
+            scores[j + 1] = s;
+        }
+        return n;
+    }
+
+    public byte[] encode(GameRecord r) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + r.moves.length);
+        out.write(r.startFen != null ? 1 : 0);
+        writeString(out, r.white);
+        writeString(out, r.black);
+        out.write(resultCode(r.result));
+        writeVarLong(out, r.baseMillis);
+        writeVarLong(out, r.incrementMillis);
+        writeVarLong(out, r.delayMillis);
+        if (r.startFen != null) writeString(out, r.startFen);
+        writeVarLong(out, r.moves.length);
+
+        Position p = r.startPosition();
+        RangeCoder.Encoder coder = new RangeCoder.Encoder();
+        resetModel();
+        for (int move : r.moves) {
+            int n = rankMoves(p, moves);
+            int rank = 0;
+            while (rank < n && moves[rank] != move) rank++;
+            if (rank == n) throw new IllegalArgumentException("illegal move " + Position.moveName(move));
+            if (n > 1) {
+                int cum = 0;
+                int total = 0;
+                for (int i = 0; i < n; i++) {
+                    if (i == rank) cum = total;
+                    total += freq[i];
+                }
+                coder.encode(cum, freq[rank], total);
+                update(rank);
+            }
+            p.makeMove(move);
+        }
+        byte[] coded = coder.finish();
+        out.write(coded, 0, coded.length);
+        return out.toByteArray();
+    }
+
+    public GameRecord decode(byte[] data) {
+        return decode(data, Integer.MAX_VALUE);
+    }
+
+    // Decodes only the header and the first maxMoves moves, which is all an opening index needs.
+    public GameRecord decode(byte[] data, int maxMoves) {
+        int[] at = {0};
+        GameRecord r = new GameRecord();
+        int flags = data[at[0]++];
+        r.white = readString(data, at);
+        r.black = readString(data, at);
+        r.result = result(data[at[0]++]);
+        r.baseMillis = readVarLong(data, at);
+        r.incrementMillis = readVarLong(data, at);
+        r.delayMillis = readVarLong(data, at);
+        if ((flags & 1) != 0) r.startFen = readString(data, at);
+        r.moves = new int[(int) Math.min(readVarLong(data, at), maxMoves)];
+
+        Position p = r.startPosition();
+        RangeCoder.Decoder coder = new RangeCoder.Decoder(data, at[0]);
+        resetModel();
+        for (int k = 0; k < r.moves.length; k++) {
+            int n = rankMoves(p, moves);
+            int rank = 0;
+            if (n > 1) {
+                int total = 0;
+                for (int i = 0; i < n; i++) total += freq[i];
+                int target = coder.frequency(total);
+                int cum = 0;
+                while (cum + freq[rank] <= target) cum += freq[rank++];
+                coder.decode(cum, freq[rank]);
+                update(rank);
+            }
+            r.moves[k] = moves[rank];
+            p.makeMove(moves[rank]);
+        }
+        return r;
+    }
+
+    private void resetModel() {
+        freqTotal = 0;
+        for (int i = 0; i < freq.length; i++) {
+            freq[i] = 1 + 256 / (i + 1);
+            freqTotal += freq[i];
+        }
+    }
+
+    private void update(int rank) {
+        freq[rank] += INCREMENT;
+        freqTotal += INCREMENT;
+        if (freqTotal > MAX_TOTAL) {
+            freqTotal = 0;
+            for (int i = 0; i < freq.length; i++) {
+                freq[i] = (freq[i] + 1) / 2;
+                freqTotal += freq[i];
+            }
+        }
+    }
+
+    static int resultCode(String result) {
+        if (result.equals(GameSession.WHITE_WINS)) return 1;
+        if (result.equals(GameSession.BLACK_WINS)) return 2;
+        if (result.equals(GameSession.DRAW)) return 3;
+        return 0;
+    }
+
+    static String result(int code) {
+        switch (code) {
+            case 1: return GameSession.WHITE_WINS;
+            case 2: return GameSession.BLACK_WINS;
+            case 3: return GameSession.DRAW;
+            default: return GameSession.ONGOING;
+        }
+    }
+
+    static void writeVarLong(OutputStream out, long v) {
+        try {
+            while ((v & ~0x7FL) != 0) {
+                out.write((int) (v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            out.write((int) v);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static long readVarLong(byte[] data, int[] at) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = data[at[0]++];
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(byte[] data, int[] at) {
+        int length = (int) readVarLong(data, at);
+        String s = new String(data, at[0], length, StandardCharsets.UTF_8);
+        at[0] += length;
+        return s;
+    }
+
+    // Appends game records to an archive stream, writing MAGIC first.
+    public static class Writer {
+        private final OutputStream out;
+        private final GameArchive codec = new GameArchive();
+
+        public Writer(OutputStream out) throws IOException {
+            this.out = out;
+            out.write(MAGIC);
+        }
+
+        public void write(GameRecord r) throws IOException {
+            writeRaw(codec.encode(r));
+        }
+
+        public void writeRaw(byte[] record) throws IOException {
+            writeVarLong(out, record.length);
+            out.write(record);
+        }
+
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    // Reads the records of an archive stream in order.
+    public static class Reader {
+        private final InputStream in;
+        private final GameArchive codec = new GameArchive();
+        // File offset of the next byte to be read, and of the last record returned.
+        private long position = MAGIC.length;
+        private long recordOffset = -1;
+
+        public Reader(InputStream in) throws IOException {
+            this.in = new BufferedInputStream(in, 1 << 16);
+            for (byte b : MAGIC) {
+                if (this.in.read() != (b & 0xFF)) throw new IOException("not a game archive");
+            }
+        }
+
+        // The next game, or null at the end of the archive.
+        public GameRecord next() throws IOException {
+            byte[] raw = nextRaw();
+            return raw == null ? null : codec.decode(raw);
+        }
+
+        // The next record still encoded, or null at the end of the archive.
+        public byte[] nextRaw() throws IOException {
+            long length = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.read();
+                if (b < 0) {
+                    if (shift == 0) return null;
+                    throw new EOFException("truncated archive");
+                }
+                position++;
+                length |= (long) (b & 0x7F) << shift;
+                if (b < 0x80) break;
+            }
+            byte[] raw = new byte[(int) length];
+            int read = 0;
+            while (read < raw.length) {
+                int k = in.read(raw, read, raw.length - read);
+                if (k < 0) throw new EOFException("truncated archive");
+                read += k;
+            }
+            recordOffset = position;
+            position += raw.length;
+            return raw;
+        }
+
+        // Where the record last returned by next or nextRaw starts in the archive file.
+        public long getRecordOffset() {
+            return recordOffset;
+        }
+
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+// Append-only journal of the games hosted by the GameServer, so that a restart can rebuild every game
+// that was in progress. Appending only copies a few bytes into an in-memory buffer; a background
+// thread writes the buffer out and fsyncs it, committing everything appended during the previous
+// fsync as one group. A crash loses at most the records of the last SYNC_MILLIS plus one fsync.
+//
+// Records (big-endian), each followed by the CRC32C of its bytes:
+//   1 game:int baseMillis:long incrementMillis:long delayMillis:long     game created
+//   2 game:int move:short whiteMillis:int blackMillis:int                move, clocks after it
+//   3 game:int result:byte reasonLength:byte reason:ASCII                game over
+//   4 game:int                                                           game closed
+// where result is 1 for 1-0, 2 for 0-1 and 3 for a draw. A torn or corrupt tail is cut off on recovery.
+public class GameJournal {
+    static final byte CREATED = 1;
+    static final byte MOVE = 2;
+    static final byte ENDED = 3;
+    static final byte CLOSED = 4;
+    static final long SYNC_MILLIS = 2;
+
+    private final FileChannel channel;
+    private final Object lock = new Object();
+    private final CRC32C crc = new CRC32C();
+    // Appended to under lock; swapped with flushing by the sync thread.
+    private ByteBuffer active = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer flushing = ByteBuffer.allocate(1 << 16);
+    private final Thread syncer;
+    private volatile boolean open = true;
+    private volatile IOException failure;
+
+    private GameJournal(FileChannel channel) {
+        this.channel = channel;
+        syncer = new Thread(new Runnable() {
+            public void run() {
+                syncLoop();
+            }
+        }, "journal-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    // Opens path for appending, creating it if needed. Run recover on it first.
+    public static GameJournal open(Path path) throws IOException {
+        return new GameJournal(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND));
+    }
+
+    // The error that stopped the sync thread, or null.
+    public IOException getFailure() {
+        return failure;
+    }
+
+    public void gameCreated(int game, long baseMillis, long incrementMillis, long delayMillis) {
+        synchronized (lock) {
+            int start = begin(33, CREATED, game);
+            active.putLong(baseMillis).putLong(incrementMillis).putLong(delayMillis);
+            end(start);
+        }
+    }
+
+    public void moveMade(int game, int move, long whiteMillis, long blackMillis) {
+        synchronized (lock) {
+            int start = begin(19, MOVE, game);
+            active.putShort((short) move).putInt((int) whiteMillis).putInt((int) blackMillis);
+            end(start);
+        }
+    }
+
+    public void gameEnded(int game, String result, String reason) {
+        byte[] text = reason.getBytes(StandardCharsets.US_ASCII);
+        synchronized (lock) {
+            int start = begin(11 + text.length, ENDED, game);
+            active.put(resultCode(result)).put((byte) text.length).put(text);
+            end(start);
+        }
+    }
+
+    public void gameClosed(int game) {
+        synchronized (lock) {
+            end(begin(9, CLOSED, game));
+        }
+    }
+
+    // Makes room for a record of the given total size and writes its header. Caller holds lock.
+    private int begin(int size, byte type, int game) {
+        if (active.remaining() < size) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(active.capacity() * 2, active.position() + size));
+            active.flip();
+            bigger.put(active);
+            active = bigger;
+        }
+        int start = active.position();
+        active.put(type).putInt(game);
+        return start;
+    }
+
+    private void end(int start) {
+        crc.reset();
+        crc.update(active.array(), start, active.position() - start);
+        active.putInt((int) crc.getValue());
+    }
+
+    private void syncLoop() {
+        try {
+            while (true) {
+                boolean closing = !open;
+                synchronized (lock) {
+                    if (active.position() == 0 && !closing) {
+                        lock.wait(SYNC_MILLIS);
+                    }
+                    ByteBuffer b = active;
+                    active = flushing;
+                    flushing = b;
+                }
+                if (flushing.position() > 0) {
+                    flushing.flip();
+                    while (flushing.hasRemaining()) channel.write(flushing);
+                    channel.force(false);
+                    flushing.clear();
+                }
+                if (closing) return;
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            // Only interrupted by close, which flushes nothing further.
+        }
+    }
+
+    // Writes and fsyncs everything appended so far, then closes the file.
+    public void close() throws IOException {
+        open = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) throw failure;
+    }
+
+    static byte resultCode(String result) {
+        if (result.equals(GameSession.WHITE_WINS)) return 1;
+        if (result.equals(GameSession.BLACK_WINS)) return 2;
+        return 3;
+    }
+
+    static String result(byte code) {
+        return code == 1 ? GameSession.WHITE_WINS : code == 2 ? GameSession.BLACK_WINS : GameSession.DRAW;
+    }
+
+    // Pre-condition: now is a System.nanoTime reading.
+    // Post-condition: returns the games in path that were not closed, by id, rebuilt by replaying
+    // their moves and with the clock of the side to move running from now. A torn or corrupt record
+    // and everything after it is truncated from the file. A missing file gives no games.
+    public static Map<Integer, GameSession> recover(Path path, long now) throws IOException {
+        Map<Integer, GameSession> games = new LinkedHashMap<Integer, GameSession>();
+        if (!Files.exists(path)) return games;
+        long good = 0;
+        CRC32C check = new CRC32C();
+        byte[] record = new byte[11 + 255];
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+            DataInputStream in = new DataInputStream(file);
+            while (true) {
+                int size;
+                try {
+                    in.readFully(record, 0, 5);
+                    switch (record[0]) {
+                        case CREATED: size = 33; break;
+                        case MOVE: size = 19; break;
+                        case CLOSED: size = 9; break;
+                        case ENDED:
+                            in.readFully(record, 5, 2);
+                            size = 11 + (record[6] & 0xFF);
+                            in.readFully(record, 7, size - 7);
+                            break;
+                        default: size = -1; break;
+                    }
+                    if (size < 0) break;
+                    if (record[0] != ENDED) in.readFully(record, 5, size - 5);
+                } catch (EOFException e) {
+                    break;
+                }
+                check.reset();
+                check.update(record, 0, size - 4);
+                ByteBuffer r = ByteBuffer.wrap(record, 0, size);
+                if (r.getInt(size - 4) != (int) check.getValue()) break;
+                r.get();
+                int id = r.getInt();
+                GameSession game = games.get(id);
+                if (record[0] == CREATED) {
+                    games.put(id, new GameSession(id, r.getLong(), r.getLong(), r.getLong()));
+                } else if (game != null) {
+                    if (record[0] == MOVE) {
+                        game.replay(r.getShort(), r.getInt(), r.getInt());
+                    } else if (record[0] == ENDED) {
+                        byte code = r.get();
+                        int length = r.get() & 0xFF;
+                        game.restoreResult(result(code), new String(record, 7, length, StandardCharsets.US_ASCII));
+                    } else {
+                        games.remove(id);
+                    }
+                }
+                good += size;
+            }
+        }
+        if (good < Files.size(path)) {
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                ch.truncate(good);
+                ch.force(true);
+            }
+        }
+        for (GameSession game : games.values()) game.resume(now);
+        return games;
+    }
+}
@@ -0,0 +1,18 @@
+// A finished (or abandoned) game as stored in a GameArchive: the players, the result, the time
+// control and the moves from the starting position (or from startFen when it is not null).
+public class GameRecord {
+    public String white = "?";
+    public String black = "?";
+    // GameSession.WHITE_WINS, BLACK_WINS, DRAW or ONGOING.
+    public String result = GameSession.ONGOING;
+    public long baseMillis;
+    public long incrementMillis;
+    public long delayMillis;
+    public String startFen;
+    public int[] moves = new int[0];
+
+    // The position the moves start from.
+    public Position startPosition() {
+        return startFen == null ? Position.startingPosition() : Position.fromFen(startFen);
+    }
+}
@@ -0,0 +1,434 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Headless server hosting many timed games at once. Every game is a GameSession; all sessions and
+// connections are driven by one event-loop thread on a Selector, so a move costs a parse, a
+// makeMove and a reply with no locking or thread hand-off. It listens on the loopback interface
+// only and speaks a line protocol that can be tried by hand with "nc localhost 7777":
+//
+//   new <base seconds> <increment seconds> [delay seconds]   ->  game <id>
+//   move <id> <move>                                          ->  ok <id> <move> <white ms> <black ms>
+//   show <id>                                                 ->  state <id> <result> <white ms> <black ms> <fen>
+//   resign <id>                                               ->  (side to move resigns)
+//   close <id>                                                ->  closed <id>
+//   watch <id>                                                ->  binary spectator frames
+//   unwatch <id>
+//   quit
+//
+// A move or resignation that ends the game is followed by "over <id> <result> <reason>", and a flag
+// falling sends the same line to the client that created the game. Refused commands get
+// "error <id or -> <reason>".
+//
+// After "watch" a connection is a spectator: it receives only the binary frames of SpectatorFeed
+// (a snapshot, then the moves in batches every FLUSH_MILLIS) and may only send watch, unwatch and
+// quit. A spectator that falls MAX_QUEUED_BATCHES behind is disconnected.
+//
+// Flag falls are found by a TimingWheel holding each game's current deadline, so idle games cost
+// nothing until a clock really expires.
+//
+// With a journal file every game creation, move, result and close is appended to a GameJournal, and
+// on start-up the games still in progress in it are restored under their old ids, their clocks
+// resuming from the recorded times. A flag falling in a restored game has no creator to tell.
+//
+// When a client disconnects, the games it created are closed as if it had sent "close" for each.
+//
+// Usage: java GameServer [port [journal file]]
+public class GameServer {
+    static final int DEFAULT_PORT = 7777;
+    static final int MAX_LINE = 512;
+    static final long TICK_MILLIS = 10;
+    static final int WHEEL_SLOTS = 1024;
+    static final long FLUSH_MILLIS = 50;
+    static final int MAX_QUEUED_BATCHES = 512;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Map<Integer, Hosted> games = new HashMap<Integer, Hosted>();
+    private final TimingWheel wheel = new TimingWheel(TICK_MILLIS, WHEEL_SLOTS, System.nanoTime());
+    private final GameJournal journal;
+    // Spectators dropped for falling behind, closed once the current flush is over.
+    private final List<Connection> dropped = new ArrayList<Connection>();
+    private int nextId = 1;
+
+    public GameServer(int port) throws IOException {
+        this(port, null);
+    }
+
+    // Pre-condition: journalPath is null to run without a journal.
+    public GameServer(int port, Path journalPath) throws IOException {
+        if (journalPath != null) {
+            for (GameSession game : GameJournal.recover(journalPath, System.nanoTime()).values()) {
+                host(game, null);
+                nextId = Math.max(nextId, game.getId() + 1);
+            }
+            journal = GameJournal.open(journalPath);
+        } else {
+            journal = null;
+        }
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", port), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        GameServer s = new GameServer(port, args.length > 1 ? Paths.get(args[1]) : null);
+        System.out.println("Listening on port " + port + ", " + s.getGameCount() + " games restored");
+        s.run();
+    }
+
+    public int getGameCount() {
+        return games.size();
+    }
+
+    // Runs the event loop until the thread is interrupted.
+    public void run() throws IOException {
+        while (!Thread.currentThread().isInterrupted()) {
+            long wait = wheel.nanosUntilNextTick(System.nanoTime());
+            if (wait == Long.MAX_VALUE) selector.select();
+            else selector.select(Math.max(1, (wait + 999999) / 1000000));
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                try {
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    if (key.isReadable()) read(key);
+                    if (key.isValid() && key.isWritable()) flush(key);
+                } catch (IOException e) {
+                    close(key);
+                }
+            }
+            wheel.advance(System.nanoTime());
+            // Closing flushes the dropped client's games, which can drop more spectators.
+            for (int i = 0; i < dropped.size(); i++) close(dropped.get(i).key);
+            dropped.clear();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch = server.accept();
+        if (ch == null) return;
+        ch.configureBlocking(false);
+        ch.socket().setTcpNoDelay(true);
+        Connection c = new Connection(dropped);
+        c.key = ch.register(selector, SelectionKey.OP_READ, c);
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel ch = (SocketChannel) key.channel();
+        Connection c = (Connection) key.attachment();
+        if (ch.read(c.in) < 0) {
+            close(key);
+            return;
+        }
+        c.in.flip();
+        int start = c.in.position();
+        for (int i = start; i < c.in.limit(); i++) {
+            if (c.in.get(i) != '\n') continue;
+            String line = new String(c.in.array(), start, i - start, StandardCharsets.US_ASCII).trim();
+            start = i + 1;
+            if (!handle(line, c)) {
+                flush(key);
+                close(key);
+                return;
+            }
+        }
+        c.in.position(start);
+        c.in.compact();
+        if (!c.in.hasRemaining()) {
+            // A line longer than the buffer: not a client of this protocol.
+            close(key);
+            return;
+        }
+        flush(key);
+    }
+
+    // Executes one command line, queueing replies on c. Returns false if the client quit.
+    private boolean handle(String line, Connection c) {
+        if (line.isEmpty()) return true;
+        String[] words = line.split("\\s+");
+        long now = System.nanoTime();
+        try {
+            if (c.spectator && !words[0].equals("watch") && !words[0].equals("unwatch")) {
+                // Spectators only get binary frames, so there is no way to answer anything else.
+                return !words[0].equals("quit");
+            }
+            switch (words[0]) {
+                case "new": {
+                    long base = Long.parseLong(words[1]) * 1000;
+                    long inc = Long.parseLong(words[2]) * 1000;
+                    long delay = words.length > 3 ? Long.parseLong(words[3]) * 1000 : 0;
+                    if (base <= 0 || inc < 0 || delay < 0) {
+                        c.send("error - bad time control");
+                        break;
+                    }
+                    int id = nextId++;
+                    if (journal != null) journal.gameCreated(id, base, inc, delay);
+                    host(new GameSession(id, base, inc, delay, now), c);
+                    c.send("game " + id);
+                    break;
+                }
+                case "move": {
+                    Hosted h = hosted(words[1], c);
+                    if (h == null) break;
+                    GameSession game = h.game;
+                    boolean wasOver = game.isOver();
+                    String refused = game.play(words[2], now);
+                    if (refused != null) {
+                        c.send("error " + game.getId() + " " + refused);
+                    } else {
+                        long whiteMillis = game.getClock(true).getRemainingMillis(now);
+                        long blackMillis = game.getClock(false).getRemainingMillis(now);
+                        if (journal != null) journal.moveMade(game.getId(), game.getLastMove(), whiteMillis, blackMillis);
+                        c.send("ok " + game.getId() + " " + words[2] + " " + whiteMillis + " " + blackMillis);
+                        h.feed.moveMade(game.getLastMove(), whiteMillis, blackMillis);
+                    }
+                    if (game.isOver()) {
+                        if (!wasOver) sendOver(h, c);
+                    } else if (refused == null) {
+                        wheel.reschedule(h.flag, game.getDeadline());
+                        scheduleFlush(h, now);
+                    }
+                    break;
+                }
+                case "show": {
+                    Hosted h = hosted(words[1], c);
+                    if (h == null) break;
+                    boolean flagged = h.game.checkFlag(now);
+                    c.send("state " + h.game.getId() + " " + h.game.getResult() + " " + clocks(h.game, now)
+                            + " " + h.game.getPosition().toFen());
+                    if (flagged) sendOver(h, c);
+                    break;
+                }
+                case "resign": {
+                    Hosted h = hosted(words[1], c);
+                    if (h == null) break;
+                    if (h.game.isOver()) {
+                        c.send("error " + h.game.getId() + " game over");
+                        break;
+                    }
+                    h.game.resign(h.game.getPosition().whiteToMove(), now);
+                    sendOver(h, c);
+                    break;
+                }
+                case "close": {
+                    Hosted h = hosted(words[1], c);
+                    if (h == null) break;
+                    closeGame(h);
+                    c.send("closed " + h.game.getId());
+                    break;
+                }
+                case "watch": {
+                    Hosted h = games.get(Integer.parseInt(words[1]));
+                    if (h == null) {
+                        if (!c.spectator) c.send("error " + words[1] + " no such game");
+                        break;
+                    }
+                    c.spectator = true;
+                    if (!c.watching.contains(h.feed)) {
+                        c.watching.add(h.feed);
+                        h.feed.subscribe(c, h.game, now);
+                    }
+                    break;
+                }
+                case "unwatch": {
+                    Hosted h = games.get(Integer.parseInt(words[1]));
+                    if (h != null && c.watching.remove(h.feed)) h.feed.unsubscribe(c);
+                    break;
+                }
+                case "quit":
+                    return false;
+                default:
+                    c.send("error - unknown command " + words[0]);
+                    break;
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            if (!c.spectator) c.send("error - malformed command");
+        }
+        return true;
+    }
+
+    // Registers game with its flag timer and spectator feed. owner is null for a restored game.
+    private void host(GameSession game, Connection owner) {
+        final Hosted h = new Hosted(game, owner);
+        h.flag = wheel.schedule(game.getDeadline(), new Runnable() {
+            public void run() {
+                flagFell(h);
+            }
+        });
+        h.flushTimer = wheel.schedule(Long.MAX_VALUE, new Runnable() {
+            public void run() {
+                h.feed.flush();
+            }
+        });
+        games.put(game.getId(), h);
+        if (owner != null) owner.owned.add(h);
+    }
+
+    // Journals the close, cancels the game's timers and sends its spectators what is still pending.
+    private void closeGame(Hosted h) {
+        games.remove(h.game.getId());
+        if (journal != null) journal.gameClosed(h.game.getId());
+        wheel.cancel(h.flag);
+        wheel.cancel(h.flushTimer);
+        h.feed.flush();
+        if (h.owner != null) h.owner.owned.remove(h);
+    }
+
+    private Hosted hosted(String id, Connection c) {
+        Hosted h = games.get(Integer.parseInt(id));
+        if (h == null) c.send("error " + id + " no such game");
+        return h;
+    }
+
+    // Called by the wheel once the side to move's deadline has passed.
+    private void flagFell(Hosted h) {
+        if (h.game.checkFlag(System.nanoTime())) {
+            sendOver(h, h.owner);
+            if (h.owner == null) return;
+            try {
+                if (h.owner.key.isValid()) flush(h.owner.key);
+            } catch (IOException e) {
+                close(h.owner.key);
+            }
+        } else {
+            wheel.reschedule(h.flag, h.game.getDeadline());
+        }
+    }
+
+    // Moves are sent to spectators in one batch per flush interval.
+    private void scheduleFlush(Hosted h, long now) {
+        if (h.feed.getSubscriberCount() == 0) {
+            h.feed.flush();
+        } else if (!h.flushTimer.isScheduled()) {
+            wheel.reschedule(h.flushTimer, now + FLUSH_MILLIS * 1000000L);
+        }
+    }
+
+    private static String clocks(GameSession game, long now) {
+        return game.getClock(true).getRemainingMillis(now) + " " + game.getClock(false).getRemainingMillis(now);
+    }
+
+    // Journals the result and tells c (if any) and the spectators that the game has ended.
+    private void sendOver(Hosted h, Connection c) {
+        GameSession game = h.game;
+        if (journal != null) journal.gameEnded(game.getId(), game.getResult(), game.getReason());
+        if (c != null) c.send("over " + game.getId() + " " + game.getResult() + " " + game.getReason());
+        h.feed.gameOver(game);
+        wheel.cancel(h.flag);
+        wheel.cancel(h.flushTimer);
+        h.feed.flush();
+    }
+
+    // Writes as much queued output as the socket takes, waiting for OP_WRITE if it falls behind.
+    private void flush(SelectionKey key) throws IOException {
+        Connection c = (Connection) key.attachment();
+        SocketChannel ch = (SocketChannel) key.channel();
+        if (c.out.position() > 0) {
+            c.out.flip();
+            ch.write(c.out);
+            c.out.compact();
+        }
+        while (c.out.position() == 0 && !c.batches.isEmpty()) {
+            ByteBuffer batch = c.batches.peek();
+            ch.write(batch);
+            if (batch.hasRemaining()) break;
+            c.batches.poll();
+        }
+        boolean behind = c.out.position() > 0 || !c.batches.isEmpty();
+        key.interestOps(behind ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void close(SelectionKey key) {
+        if (key.attachment() instanceof Connection) {
+            Connection c = (Connection) key.attachment();
+            for (SpectatorFeed feed : c.watching) feed.unsubscribe(c);
+            c.watching.clear();
+            while (!c.owned.isEmpty()) closeGame(c.owned.get(c.owned.size() - 1));
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already gone.
+        }
+    }
+
+    // A game with its flag timer, spectator feed and the client that created it.
+    private static class Hosted {
+        final GameSession game;
+        final Connection owner;
+        final SpectatorFeed feed;
+        TimingWheel.Timeout flag;
+        TimingWheel.Timeout flushTimer;
+
+        Hosted(GameSession game, Connection owner) {
+            this.game = game;
+            this.owner = owner;
+            this.feed = new SpectatorFeed(game.getId());
+        }
+    }
+
+    // Per-client buffers. Replies are queued in out, spectator batches in batches (views of arrays
+    // shared with the other spectators), and both are written by flush.
+    private static class Connection implements SpectatorFeed.Subscriber {
+        final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+        ByteBuffer out = ByteBuffer.allocate(1024);
+        final ArrayDeque<ByteBuffer> batches = new ArrayDeque<ByteBuffer>();
+        final List<SpectatorFeed> watching = new ArrayList<SpectatorFeed>();
+        // Games this client created.
+        final List<Hosted> owned = new ArrayList<Hosted>();
+        final List<Connection> dropped;
+        boolean spectator;
+        SelectionKey key;
+
+        Connection(List<Connection> dropped) {
+            this.dropped = dropped;
+        }
+
+        public boolean deliver(ByteBuffer batch) {
+            if (!key.isValid()) return false;
+            if (batches.size() >= MAX_QUEUED_BATCHES) {
+                // Closed by the event loop, since closing touches the feed being flushed.
+                key.cancel();
+                dropped.add(this);
+                return false;
+            }
+            batches.add(batch);
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            return true;
+        }
+
+        void send(String line) {
+            byte[] bytes = (line + "\n").getBytes(StandardCharsets.US_ASCII);
+            if (out.remaining() < bytes.length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes.length));
+                out.flip();
+                bigger.put(out);
+                out = bigger;
+            }
+            out.put(bytes);
+        }
+    }
+}
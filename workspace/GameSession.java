@@ -0,0 +1,139 @@
+// One timed game hosted by the GameServer: the position, both clocks and the result, with the same
+// rules as the Swing Board but no window or Swing timer. A session costs a Position and two Clocks,
+// so one process can hold many thousands of them.
+//
+// Sessions are not thread-safe; the server only touches them from its event-loop thread.
+public class GameSession {
+    public static final String ONGOING = "*";
+    public static final String WHITE_WINS = "1-0";
+    public static final String BLACK_WINS = "0-1";
+    public static final String DRAW = "1/2-1/2";
+
+    private final int id;
+    private final Position position;
+    private final Clock whiteClock;
+    private final Clock blackClock;
+
+    private String result = ONGOING;
+    private String reason = "";
+    private int lastMove = Position.NO_MOVE;
+
+    // Pre-condition: now is a System.nanoTime reading.
+    // Post-condition: the game is at the starting position with White's clock running.
+    public GameSession(int id, long baseMillis, long incrementMillis, long delayMillis, long now) {
+        this(id, baseMillis, incrementMillis, delayMillis);
+        whiteClock.start(now);
+    }
+
+    // A game whose clocks have not started, to be rebuilt with replay and then resumed.
+    public GameSession(int id, long baseMillis, long incrementMillis, long delayMillis) {
+        this.id = id;
+        this.position = Position.startingPosition();
+        this.whiteClock = new Clock(baseMillis, incrementMillis, delayMillis);
+        this.blackClock = new Clock(baseMillis, incrementMillis, delayMillis);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Position getPosition() {
+        return position;
+    }
+
+    public Clock getClock(boolean white) {
+        return white ? whiteClock : blackClock;
+    }
+
+    public boolean isOver() {
+        return !result.equals(ONGOING);
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    // The move most recently played, or Position.NO_MOVE before the first.
+    public int getLastMove() {
+        return lastMove;
+    }
+
+    // The System.nanoTime reading at which the side to move runs out of time, or Long.MAX_VALUE
+    // once the game is over.
+    public long getDeadline() {
+        return isOver() ? Long.MAX_VALUE : getClock(position.whiteToMove()).getDeadline();
+    }
+
+    // Plays a move given in coordinate notation (e2e4) for the side to move, pressing its clock.
+    // Pre-condition: now is a System.nanoTime reading.
+    // Post-condition: returns null if the move was played (the game may have ended because of it),
+    // otherwise the reason it was refused. A move that arrives after the flag fell ends the game.
+    public String play(String name, long now) {
+        if (isOver()) return "game over";
+        if (checkFlag(now)) return "flag fell";
+        int move = position.parseMove(name);
+        if (move == Position.NO_MOVE) return "illegal move";
+
+        boolean white = position.whiteToMove();
+        getClock(white).stop(now);
+        position.makeMove(move);
+        lastMove = move;
+        getClock(!white).start(now);
+
+        if (!position.hasLegalMove()) {
+            if (position.inCheck()) end(white ? WHITE_WINS : BLACK_WINS, "checkmate", now);
+            else end(DRAW, "stalemate", now);
+        } else if (position.isThreefoldRepetition()) {
+            end(DRAW, "threefold repetition", now);
+        } else if (position.isFiftyMoveDraw()) {
+            end(DRAW, "fifty-move rule", now);
+        }
+        return null;
+    }
+
+    // Re-plays a journaled move with the clock readings recorded after it, without checking it or
+    // running any clock. Pre-condition: move is legal here and the clocks are stopped.
+    public void replay(int move, long whiteMillis, long blackMillis) {
+        position.makeMove(move);
+        lastMove = move;
+        whiteClock.setRemainingMillis(whiteMillis);
+        blackClock.setRemainingMillis(blackMillis);
+    }
+
+    // Restores a journaled result.
+    public void restoreResult(String result, String reason) {
+        this.result = result;
+        this.reason = reason;
+    }
+
+    // Starts the clock of the side to move after a restore; time spent while the server was down is
+    // not charged.
+    public void resume(long now) {
+        if (!isOver()) getClock(position.whiteToMove()).start(now);
+    }
+
+    // Ends the game if the side to move has run out of time. Returns true if that happened now.
+    public boolean checkFlag(long now) {
+        if (isOver()) return false;
+        boolean white = position.whiteToMove();
+        if (!getClock(white).outOfTime(now)) return false;
+        getClock(white).stop(now);
+        end(white ? BLACK_WINS : WHITE_WINS, "time", now);
+        return true;
+    }
+
+    public void resign(boolean white, long now) {
+        if (!isOver()) end(white ? BLACK_WINS : WHITE_WINS, "resignation", now);
+    }
+
+    private void end(String result, String reason, long now) {
+        this.result = result;
+        this.reason = reason;
+        whiteClock.stop(now);
+        blackClock.stop(now);
+    }
+}
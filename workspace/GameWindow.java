@@ -3,10 +3,16 @@ import java.awt.GridLayout;
 import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.Font;
 import java.io.File;
+import java.io.IOException;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 
 
 //Warning* Mess with this file at your own peril. You do not need to modify anything in here other than the 
@@ -21,13 +27,44 @@ public class GameWindow {
     
     private Board board;
     
+    private JLabel wTime;
+    private JLabel bTime;
+    
+    private final int incSecs;
+    private final int delaySecs;
+    
+    // Opening explorer: moves played from the current position in an indexed game archive.
+    private PositionIndex explorer;
+    private JTextArea explorerText;
+    
+    // Analysis mode: the engine's best lines for the current position, refreshed by analysisTimer.
+    private static final int ANALYSIS_LINES = 3;
+    private static final int ANALYSIS_REFRESH_MILLIS = 200;
+    private Analyzer analyzer;
+    private JTextArea analysisText;
+    private Timer analysisTimer;
+    
+    // Move history: "Start" and then one entry per ply; selecting an entry goes to that ply.
+    private DefaultListModel<String> historyModel;
+    private JList<String> historyList;
+    // Set while the list is brought in line with the board, so that is not taken as a click.
+    private boolean syncingHistory;
+    
     
     
     public GameWindow(String blackName, String whiteName, int hh, 
             int mm, int ss) {
+        this(blackName, whiteName, hh, mm, ss, 0, 0);
+    }
+    
+    public GameWindow(String blackName, String whiteName, int hh, 
+            int mm, int ss, int incSecs, int delaySecs) {
         
-        blackClock = new Clock(hh, ss, mm);
-        whiteClock = new Clock(hh, ss, mm);
+        this.incSecs = incSecs;
+        this.delaySecs = delaySecs;
+        long baseMillis = ((hh * 60L + mm) * 60L + ss) * 1000L;
+        blackClock = new Clock(baseMillis, incSecs * 1000L, delaySecs * 1000L);
+        whiteClock = new Clock(baseMillis, incSecs * 1000L, delaySecs * 1000L);
         
         gameWindow = new JFrame("Chess");
         
@@ -53,6 +90,23 @@ public class GameWindow {
         
         gameWindow.add(board, BorderLayout.CENTER);
         
+        explorerText = new JTextArea(12, 28);
+        explorerText.setEditable(false);
+        explorerText.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        explorerText.setVisible(false);
+        
+        analysisText = new JTextArea(ANALYSIS_LINES + 1, 48);
+        analysisText.setEditable(false);
+        analysisText.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        analysisText.setVisible(false);
+        
+        JPanel side = new JPanel(new BorderLayout(0, 10));
+        side.add(explorerText, BorderLayout.NORTH);
+        side.add(analysisText, BorderLayout.SOUTH);
+        gameWindow.add(side, BorderLayout.EAST);
+        
+        gameWindow.add(historyPanel(), BorderLayout.WEST);
+        
         gameWindow.add(buttons(), BorderLayout.SOUTH);
         
         gameWindow.setMinimumSize(gameWindow.getPreferredSize());
@@ -62,6 +116,12 @@ public class GameWindow {
         gameWindow.pack();
         gameWindow.setVisible(true);
         gameWindow.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        gameWindow.addWindowListener(new WindowAdapter() {
+            public void windowClosed(WindowEvent e) {
+                if (analysisTimer != null) analysisTimer.stop();
+                if (analyzer != null) analyzer.close();
+            }
+        });
     }
     
 // Helper function to create data panel
@@ -91,8 +151,8 @@ public class GameWindow {
         
         // CLOCKS
         
-        final JLabel bTime = new JLabel(blackClock.getTime());
-        final JLabel wTime = new JLabel(whiteClock.getTime());
+        bTime = new JLabel(blackClock.getTime());
+        wTime = new JLabel(whiteClock.getTime());
         
         bTime.setHorizontalAlignment(JLabel.CENTER);
         bTime.setVerticalAlignment(JLabel.CENTER);
@@ -100,50 +160,23 @@ public class GameWindow {
         wTime.setVerticalAlignment(JLabel.CENTER);
         
         if (!(hh == 0 && mm == 0 && ss == 0)) {
-            timer = new Timer(1000, null);
+            // The clocks keep their own time; this timer only refreshes the labels and watches
+            // for a fallen flag, so a late tick just delays the display.
+            timer = new Timer(100, null);
             timer.addActionListener(new ActionListener() {
                 public void actionPerformed(ActionEvent e) {
-                    boolean turn = board.getTurn();
+                    long now = System.nanoTime();
+                    wTime.setText(whiteClock.getTime(now));
+                    bTime.setText(blackClock.getTime(now));
                     
-                    if (turn) {
-                        whiteClock.decr();
-                        wTime.setText(whiteClock.getTime());
-                        
-                        if (whiteClock.outOfTime()) {
-                            timer.stop();
-                            int n = JOptionPane.showConfirmDialog(
-                                    gameWindow,
-                                    bn + " wins by time! Play a new game? \n" +
-                                    "Choosing \"No\" quits the game.",
-                                    bn + " wins!",
-                                    JOptionPane.YES_NO_OPTION);
-                            
-                            if (n == JOptionPane.YES_OPTION) {
-                                new GameWindow(bn, wn, hh, mm, ss);
-                                gameWindow.dispose();
-                            } else gameWindow.dispose();
-                        }
-                    } else {
-                        blackClock.decr();
-                        bTime.setText(blackClock.getTime());
-                        
-                        if (blackClock.outOfTime()) {
-                            timer.stop();
-                            int n = JOptionPane.showConfirmDialog(
-                                    gameWindow,
-                                    wn + " wins by time! Play a new game? \n" +
-                                    "Choosing \"No\" quits the game.",
-                                    wn + " wins!",
-                                    JOptionPane.YES_NO_OPTION);
-                            
-                            if (n == JOptionPane.YES_OPTION) {
-                                new GameWindow(bn, wn, hh, mm, ss);
-                                gameWindow.dispose();
-                            } else gameWindow.dispose();
-                        }
+                    if (whiteClock.outOfTime(now)) {
+                        timeOut(true, bn, wn, hh, mm, ss);
+                    } else if (blackClock.outOfTime(now)) {
+                        timeOut(false, bn, wn, hh, mm, ss);
                     }
                 }
             });
+            whiteClock.start();
             timer.start();
         } else {
             wTime.setText("Untimed game");
@@ -158,9 +191,155 @@ public class GameWindow {
         return gameData;
     }
     
+    // Shows the loss-on-time dialog for whichever side's flag fell.
+    private void timeOut(boolean whiteFlagged, String bn, String wn, int hh, int mm, int ss) {
+        timer.stop();
+        String winner = whiteFlagged ? bn : wn;
+        int n = JOptionPane.showConfirmDialog(
+                gameWindow,
+                winner + " wins by time! Play a new game? \n" +
+                "Choosing \"No\" quits the game.",
+                winner + " wins!",
+                JOptionPane.YES_NO_OPTION);
+        
+        if (n == JOptionPane.YES_OPTION) {
+            new GameWindow(bn, wn, hh, mm, ss, incSecs, delaySecs);
+            gameWindow.dispose();
+        } else gameWindow.dispose();
+    }
+    
+    // Called by the board after every completed move to press the mover's clock.
+    public void moveMade(boolean whiteMoved) {
+        refreshExplorer();
+        if (analysisTimer != null) analyzer.analyze(board.getPosition());
+        // The new move replaces any moves that could have been redone.
+        int ply = board.getPly();
+        syncingHistory = true;
+        while (historyModel.size() > ply) historyModel.remove(historyModel.size() - 1);
+        historyModel.addElement(historyEntry(ply - 1));
+        historyList.setSelectedIndex(ply);
+        historyList.ensureIndexIsVisible(ply);
+        syncingHistory = false;
+        if (timer == null) return;
+        long now = System.nanoTime();
+        if (whiteMoved) {
+            whiteClock.stop(now);
+            blackClock.start(now);
+        } else {
+            blackClock.stop(now);
+            whiteClock.start(now);
+        }
+        wTime.setText(whiteClock.getTime(now));
+        bTime.setText(blackClock.getTime(now));
+    }
+    
+    // Called by the board after an undo, redo or jump to another ply.
+    public void historyMoved() {
+        refreshExplorer();
+        if (analysisTimer != null) analyzer.analyze(board.getPosition());
+        int ply = board.getPly();
+        syncingHistory = true;
+        historyList.setSelectedIndex(ply);
+        historyList.ensureIndexIsVisible(ply);
+        syncingHistory = false;
+        // While the game is on, the clock of the side now to move runs; no increment is earned.
+        if (timer != null && timer.isRunning()) {
+            long now = System.nanoTime();
+            boolean white = board.getPosition().whiteToMove();
+            (white ? blackClock : whiteClock).pause(now);
+            (white ? whiteClock : blackClock).start(now);
+            wTime.setText(whiteClock.getTime(now));
+            bTime.setText(blackClock.getTime(now));
+        }
+    }
+    
+    // "12. Nf3" for White's moves, "12... Nf6" for Black's.
+    private String historyEntry(int i) {
+        return (i / 2 + 1) + (i % 2 == 0 ? ". " : "... ") + board.getMoveName(i);
+    }
+    
+    private JPanel historyPanel() {
+        historyModel = new DefaultListModel<String>();
+        historyModel.addElement("Start");
+        historyList = new JList<String>(historyModel);
+        historyList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        historyList.setSelectedIndex(0);
+        historyList.addListSelectionListener(new ListSelectionListener() {
+            public void valueChanged(ListSelectionEvent e) {
+                if (syncingHistory || e.getValueIsAdjusting() || historyList.getSelectedIndex() < 0) return;
+                board.goToPly(historyList.getSelectedIndex());
+            }
+        });
+        
+        final JButton undo = new JButton("Undo");
+        undo.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                board.undo();
+            }
+          });
+        final JButton redo = new JButton("Redo");
+        redo.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                board.redo();
+            }
+          });
+        
+        JPanel navigation = new JPanel(new GridLayout(1, 2, 5, 0));
+        navigation.add(undo);
+        navigation.add(redo);
+        
+        JPanel history = new JPanel(new BorderLayout(0, 5));
+        JScrollPane scroll = new JScrollPane(historyList);
+        scroll.setPreferredSize(new java.awt.Dimension(150, 300));
+        history.add(scroll, BorderLayout.CENTER);
+        history.add(navigation, BorderLayout.SOUTH);
+        return history;
+    }
+    
+    // Lists the moves the explorer index has for the board's current position.
+    private void refreshExplorer() {
+        if (explorer == null) return;
+        Position p = board.getPosition();
+        StringBuilder sb = new StringBuilder(" Move     Games   White  Draw  Black\n");
+        int shown = 0;
+        for (PositionIndex.Stats s : explorer.lookup(p)) {
+            if (shown++ == 10) break;
+            sb.append(String.format(" %-6s %7d  %5.1f%% %4.0f%% %5.1f%%%n", Position.moveName(s.move), s.games(),
+                    100.0 * s.whiteWins / s.games(), 100.0 * s.draws / s.games(), 100.0 * s.blackWins / s.games()));
+        }
+        if (shown == 0) sb.append(" No games reach this position.");
+        explorerText.setText(sb.toString());
+    }
+    
+    // Starts analysing the current position, creating the engine the first time.
+    private void startAnalysis() {
+        if (analyzer == null) analyzer = new Analyzer(ANALYSIS_LINES, 32);
+        analysisTimer = new Timer(ANALYSIS_REFRESH_MILLIS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                String text = analyzer.takeText();
+                if (text != null) analysisText.setText(text);
+            }
+        });
+        analysisTimer.start();
+        analysisText.setText(" Thinking...");
+        analysisText.setVisible(true);
+        analyzer.analyze(board.getPosition());
+        gameWindow.pack();
+    }
+    
+    // Stops the analysis but keeps the engine, and its transposition table, for next time.
+    private void stopAnalysis() {
+        if (analysisTimer == null) return;
+        analysisTimer.stop();
+        analysisTimer = null;
+        analyzer.pause();
+        analysisText.setVisible(false);
+        gameWindow.pack();
+    }
+    
     private JPanel buttons() {
         JPanel buttons = new JPanel();
-        buttons.setLayout(new GridLayout(1, 3, 10, 0));
+        buttons.setLayout(new GridLayout(1, 5, 10, 0));
         
         final JButton quit = new JButton("Quit");
         
@@ -217,7 +396,41 @@ public class GameWindow {
             }
           });
         
+        final JButton explore = new JButton("Explorer");
+        
+        explore.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                JFileChooser chooser = new JFileChooser();
+                chooser.setDialogTitle("Open position index");
+                if (chooser.showOpenDialog(gameWindow) != JFileChooser.APPROVE_OPTION) return;
+                try {
+                    if (explorer != null) explorer.close();
+                    explorer = PositionIndex.open(chooser.getSelectedFile().toPath());
+                } catch (IOException ex) {
+                    explorer = null;
+                    JOptionPane.showMessageDialog(gameWindow, "Could not open " +
+                            chooser.getSelectedFile() + ": " + ex.getMessage(),
+                            "Explorer", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                explorerText.setVisible(true);
+                refreshExplorer();
+                gameWindow.pack();
+            }
+          });
+        
+        final JButton analysis = new JButton("Analysis");
+        
+        analysis.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (analysisTimer == null) startAnalysis();
+                else stopAnalysis();
+            }
+          });
+        
         buttons.add(instr);
+        buttons.add(explore);
+        buttons.add(analysis);
         buttons.add(nGame);
         buttons.add(quit);
         
@@ -255,4 +468,19 @@ public class GameWindow {
             }
         }
     }
+    
+    public void drawOccurred (String reason) {
+        if (timer != null) timer.stop();
+        int n = JOptionPane.showConfirmDialog(
+                gameWindow,
+                "Draw by " + reason + "! Set up a new game? \n" +
+                "Choosing \"No\" lets you look at the final situation.",
+                "Draw!",
+                JOptionPane.YES_NO_OPTION);
+        
+        if (n == JOptionPane.YES_OPTION) {
+            SwingUtilities.invokeLater(new StartMenu());
+            gameWindow.dispose();
+        }
+    }
 }
@@ -1,32 +1,17 @@
 
 import java.awt.Graphics;
 import java.awt.Image;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
-import javax.imageio.ImageIO;
-
 //you will need to implement two functions in this file.
 public class Knight extends Piece{
-    private final boolean color;
-    private BufferedImage img;
     
     public Knight(boolean isWhite, String img_file) {
-      
       super(isWhite, img_file);
-      this.color = isWhite;
-        
-      //   try {
-      //       if (this.img == null) {
-      //         this.img = ImageIO.read(getClass().getResource(img_file));
-      //       }
-      //     } catch (IOException e) {
-      //       System.out.println("File not found: " + e.getMessage());
-      //     }
     }
     
   
@@ -48,25 +33,25 @@ public class Knight extends Piece{
       if (start.getRow()+1<8 && start.getCol()+2<8){
         moves.add(board[start.getRow()+1][ start.getCol()+2]);
       }
-      if (start.getRow()-1>0 && start.getCol()+2<8){
+      if (start.getRow()-1>=0 && start.getCol()+2<8){
         moves.add(board[start.getRow()-1][ start.getCol()+2]);
       }
-      if (start.getRow()+1<8 && start.getCol()-2>0){
+      if (start.getRow()+1<8 && start.getCol()-2>=0){
         moves.add(board[start.getRow()+1][ start.getCol()-2]);
       }
-      if (start.getRow()-1>0 && start.getCol()-2>0){
+      if (start.getRow()-1>=0 && start.getCol()-2>=0){
         moves.add(board[start.getRow()-1][ start.getCol()-2]);
       }
       if (start.getRow()+2<8 && start.getCol()+1<8){
         moves.add(board[start.getRow()+2][ start.getCol()+1]);
       }
-      if (start.getRow()-2>0 && start.getCol()+1<8){
+      if (start.getRow()-2>=0 && start.getCol()+1<8){
         moves.add(board[start.getRow()-2][ start.getCol()+1]);
       }
-      if (start.getRow()+2<8 && start.getCol()-1>0){
+      if (start.getRow()+2<8 && start.getCol()-1>=0){
         moves.add(board[start.getRow()+2][ start.getCol()-1]);
       }
-      if (start.getRow()-2>0 && start.getCol()-1>0){
+      if (start.getRow()-2>=0 && start.getCol()-1>=0){
         moves.add(board[start.getRow()-2][ start.getCol()-1]);
       }
       return moves;
@@ -0,0 +1,335 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Self-play match between two engine configurations, for checking that a change does not weaken
+// play. Games run on the headless Position, one per worker thread; every opening is played twice
+// with the colours swapped. A sequential probability ratio test decides between "A is no better
+// than elo0" and "A is at least elo1 stronger" and ends the match as soon as either is accepted.
+//
+// Usage: java Match [-games n] [-tc base+inc | -nodes n | -depth n] [-threads n] [-hash mb]
+//                   [-openings file] [-elo0 e] [-elo1 e] [-alpha a] [-beta b]
+//                   [-a name]... [-b name]... [-anet file] [-bnet file]
+// where -tc is in milliseconds, the opening file has one FEN or EPD position per line, -a and -b
+// switch a search option off (as in Bench) for engine A or B, and -anet/-bnet give that engine an
+// NNUE network instead of the classical evaluation.
+public class Match {
+    // Games longer than this are drawn.
+    static final int MAX_PLIES = 400;
+    // Both engines agreeing on a score this large for RESIGN_PLIES plies in a row ends the game.
+    static final int RESIGN_SCORE = 1000;
+    static final int RESIGN_PLIES = 8;
+    // Random openings when no file is given: this many plies, kept only if roughly level.
+    static final int OPENING_PLIES = 8;
+    static final int OPENING_MARGIN = 80;
+
+    // One side of the match.
+    static class Engine {
+        final SearchOptions options = new SearchOptions();
+        NnueNetwork network;
+
+        Evaluator newEvaluator() {
+            return network != null ? new NnueEvaluator(network) : new ClassicalEvaluator();
+        }
+    }
+
+    private final Engine a;
+    private final Engine b;
+    private final List<String> openings;
+    private final int maxGames;
+    private final long baseMillis;
+    private final long incrementMillis;
+    private final long nodesPerMove;
+    private final int depthPerMove;
+    private final int hashMegabytes;
+
+    private final double lowerBound;
+    private final double upperBound;
+    private final double score0;
+    private final double score1;
+
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private volatile boolean finished;
+    // Results from A's point of view, guarded by this.
+    private int wins;
+    private int draws;
+    private int losses;
+    private long startNanos;
+
+    // Pre-condition: exactly one way of limiting the search is in use: baseMillis > 0 for a clock,
+    // otherwise nodesPerMove < Long.MAX_VALUE or depthPerMove < Search.MAX_PLY.
+    public Match(Engine a, Engine b, List<String> openings, int maxGames, long baseMillis,
+            long incrementMillis, long nodesPerMove, int depthPerMove, int hashMegabytes,
+            double elo0, double elo1, double alpha, double beta) {
+        this.a = a;
+        this.b = b;
+        this.openings = openings;
+        this.maxGames = maxGames;
+        this.baseMillis = baseMillis;
+        this.incrementMillis = incrementMillis;
+        this.nodesPerMove = nodesPerMove;
+        this.depthPerMove = depthPerMove;
+        this.hashMegabytes = hashMegabytes;
+        lowerBound = Math.log(beta / (1 - alpha));
+        upperBound = Math.log((1 - beta) / alpha);
+        score0 = expectedScore(elo0);
+        score1 = expectedScore(elo1);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Engine a = new Engine();
+        Engine b = new Engine();
+        String openingFile = null;
+        int games = 20000;
+        long base = 2000;
+        long inc = 20;
+        long nodes = Long.MAX_VALUE;
+        int depth = Search.MAX_PLY;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hash = 8;
+        double elo0 = 0;
+        double elo1 = 5;
+        double alpha = 0.05;
+        double beta = 0.05;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            String value = i + 1 < args.length ? args[++i] : "";
+            switch (arg) {
+                case "-games": games = Integer.parseInt(value); break;
+                case "-tc": {
+                    int plus = value.indexOf('+');
+                    base = Long.parseLong(plus < 0 ? value : value.substring(0, plus));
+                    inc = plus < 0 ? 0 : Long.parseLong(value.substring(plus + 1));
+                    break;
+                }
+                case "-nodes": nodes = Long.parseLong(value); base = 0; break;
+                case "-depth": depth = Integer.parseInt(value); base = 0; break;
+                case "-threads": threads = Integer.parseInt(value); break;
+                case "-hash": hash = Integer.parseInt(value); break;
+                case "-openings": openingFile = value; break;
+                case "-elo0": elo0 = Double.parseDouble(value); break;
+                case "-elo1": elo1 = Double.parseDouble(value); break;
+                case "-alpha": alpha = Double.parseDouble(value); break;
+                case "-beta": beta = Double.parseDouble(value); break;
+                case "-anet": a.network = NnueNetwork.load(Paths.get(value)); break;
+                case "-bnet": b.network = NnueNetwork.load(Paths.get(value)); break;
+                case "-a":
+                case "-b":
+                    if ((arg.equals("-a") ? a : b).options.disable(value)) break;
+                    System.out.println("Unknown option " + value);
+                    return;
+                default:
+                    System.out.println("Unknown argument " + arg);
+                    return;
+            }
+        }
+
+        List<String> openings = openingFile != null ? readOpenings(openingFile) : randomOpenings(games / 2 + 1);
+        if (openings.isEmpty()) {
+            System.out.println("No openings");
+            return;
+        }
+        System.out.println("A: " + a.options + (a.network != null ? ", nnue" : ""));
+        System.out.println("B: " + b.options + (b.network != null ? ", nnue" : ""));
+        System.out.println((base > 0 ? "tc " + base + "+" + inc + " ms" : nodes < Long.MAX_VALUE
+                ? nodes + " nodes/move" : "depth " + depth) + ", " + openings.size() + " openings, "
+                + threads + " threads, SPRT elo0 " + elo0 + " elo1 " + elo1);
+        Match match = new Match(a, b, openings, games, base, inc, nodes, depth, hash, elo0, elo1, alpha, beta);
+        match.run(threads);
+        match.report(true);
+    }
+
+    // Reads one position per line, keeping the board, side, castling and en passant fields of FEN
+    // or EPD lines and skipping blank lines and # comments.
+    static List<String> readOpenings(String file) throws IOException {
+        List<String> openings = new ArrayList<String>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] fields = line.split("\\s+");
+            StringBuilder fen = new StringBuilder(fields[0]);
+            for (int i = 1; i < Math.min(4, fields.length); i++) fen.append(' ').append(fields[i]);
+            openings.add(fen.toString());
+        }
+        return openings;
+    }
+
+    // Builds count openings by random play from the starting position, dropping any that a short
+    // search thinks are already lopsided. Seeded, so repeated matches use the same openings.
+    static List<String> randomOpenings(int count) {
+        Random random = new Random(20240501);
+        TranspositionTable tt = TranspositionTable.withMegabytes(1);
+        SearchOptions options = new SearchOptions();
+        int[] moves = new int[Position.MAX_MOVES];
+        List<String> openings = new ArrayList<String>();
+        while (openings.size() < count) {
+            Position p = Position.startingPosition();
+            boolean ok = true;
+            for (int ply = 0; ply < OPENING_PLIES && ok; ply++) {
+                int n = p.generateLegalMoves(moves);
+                if (n == 0) ok = false;
+                else p.makeMove(moves[random.nextInt(n)]);
+            }
+            if (!ok || !p.hasLegalMove()) continue;
+            Search search = new Search(p, tt, options);
+            search.search(4);
+            if (Math.abs(search.getScore()) <= OPENING_MARGIN) openings.add(p.toFen());
+        }
+        return openings;
+    }
+
+    // Plays games on threads workers until maxGames are done or the SPRT has decided.
+    public void run(int threads) throws InterruptedException {
+        startNanos = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    Worker worker = new Worker();
+                    int game;
+                    while (!finished && (game = nextGame.getAndIncrement()) < maxGames) {
+                        // Game 2k and 2k+1 share an opening; A is White in the first.
+                        String fen = openings.get((game / 2) % openings.size());
+                        int result = worker.play(fen, game % 2 == 0);
+                        record(result);
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    // The per-thread state: a transposition table and an evaluator for each engine.
+    private class Worker {
+        final TranspositionTable ttA = TranspositionTable.withMegabytes(hashMegabytes);
+        final TranspositionTable ttB = TranspositionTable.withMegabytes(hashMegabytes);
+        final int[] moves = new int[Position.MAX_MOVES];
+
+        // Returns 1, 0 or -1 as engine A wins, draws or loses.
+        int play(String fen, boolean aWhite) {
+            ttA.clear();
+            ttB.clear();
+            // Each engine follows the game on its own copy, with its own evaluator attached.
+            Position posA = Position.fromFen(fen);
+            Position posB = Position.fromFen(fen);
+            posA.setEvaluator(a.newEvaluator());
+            posB.setEvaluator(b.newEvaluator());
+            Search searchA = new Search(posA, ttA, a.options);
+            Search searchB = new Search(posB, ttB, b.options);
+            searchA.setNodeLimit(nodesPerMove);
+            searchB.setNodeLimit(nodesPerMove);
+            Clock clockA = new Clock(baseMillis, incrementMillis, 0);
+            Clock clockB = new Clock(baseMillis, incrementMillis, 0);
+
+            int decisive = 0;
+            for (int ply = 0; ply < MAX_PLIES; ply++) {
+                if (!posA.hasLegalMove()) {
+                    if (!posA.inCheck()) return 0;
+                    // The side to move is mated.
+                    return posA.whiteToMove() == aWhite ? -1 : 1;
+                }
+                if (posA.isThreefoldRepetition() || posA.isFiftyMoveDraw() || onlyKings(posA)) return 0;
+
+                boolean aToMove = posA.whiteToMove() == aWhite;
+                Search search = aToMove ? searchA : searchB;
+                Clock clock = aToMove ? clockA : clockB;
+                long now = System.nanoTime();
+                if (baseMillis > 0) {
+                    search.setTimeManager(TimeManager.forClock(clock, now));
+                    clock.start(now);
+                }
+                int move = search.search(depthPerMove);
+                if (baseMillis > 0) {
+                    now = System.nanoTime();
+                    if (clock.outOfTime(now)) return aToMove ? -1 : 1;
+                    clock.stop(now);
+                }
+
+                // Adjudicate once both sides have agreed on a clear result for a while.
+                int score = aToMove ? search.getScore() : -search.getScore();
+                if (Math.abs(score) >= RESIGN_SCORE && (decisive == 0 || Integer.signum(score) == Integer.signum(decisive))) {
+                    decisive += Integer.signum(score);
+                    if (Math.abs(decisive) >= RESIGN_PLIES) return Integer.signum(decisive);
+                } else {
+                    decisive = 0;
+                }
+                posA.makeMove(move);
+                posB.makeMove(move);
+            }
+            return 0;
+        }
+    }
+
+    private static boolean onlyKings(Position p) {
+        for (int piece = Position.PAWN; piece < Position.KING; piece++) {
+            if (p.pieceCount(piece) > 0 || p.pieceCount(Position.BLACK | piece) > 0) return false;
+        }
+        return true;
+    }
+
+    private synchronized void record(int result) {
+        if (finished) return;
+        if (result > 0) wins++;
+        else if (result < 0) losses++;
+        else draws++;
+        double llr = logLikelihoodRatio();
+        if (llr <= lowerBound || llr >= upperBound) finished = true;
+        int n = wins + draws + losses;
+        if (n % 100 == 0 && n < maxGames && !finished) report(false);
+    }
+
+    // Logistic Elo to expected score.
+    static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    // The log-likelihood ratio of elo1 against elo0 for the results so far, using the normal
+    // approximation to the trinomial win/draw/loss distribution. 0 until the results differ, since
+    // identical results give no variance to measure against.
+    synchronized double logLikelihoodRatio() {
+        int n = wins + draws + losses;
+        if (n == 0) return 0;
+        double score = (wins + 0.5 * draws) / n;
+        double variance = variance(score);
+        if (variance == 0) return 0;
+        return n * (score1 - score0) * (2 * score - score0 - score1) / (2 * variance);
+    }
+
+    // Variance of a single game's result about score.
+    private synchronized double variance(double score) {
+        int n = wins + draws + losses;
+        return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score) + losses * score * score) / n;
+    }
+
+    synchronized void report(boolean last) {
+        int n = wins + draws + losses;
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        double score = n > 0 ? (wins + 0.5 * draws) / n : 0.5;
+        String elo = "-";
+        if (n > 0 && score > 0 && score < 1) {
+            double margin = 1.96 * Math.sqrt(variance(score) / n);
+            elo = String.format("%.1f +- %.1f", eloOf(score),
+                    (eloOf(Math.min(0.999, score + margin)) - eloOf(Math.max(0.001, score - margin))) / 2);
+        }
+        System.out.printf("Games %d: +%d -%d =%d, Elo %s, LLR %.2f (%.2f, %.2f), %.2f games/s%n", n, wins,
+                losses, draws, elo, logLikelihoodRatio(), lowerBound, upperBound, n / seconds);
+        if (last) {
+            double llr = logLikelihoodRatio();
+            System.out.println(llr >= upperBound ? "H1 accepted: A is stronger"
+                    : llr <= lowerBound ? "H0 accepted: A is not stronger" : "Inconclusive");
+        }
+    }
+
+    private static double eloOf(double score) {
+        return -400 * Math.log10(1 / score - 1);
+    }
+}
@@ -0,0 +1,381 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Finds the games of a GameArchive that reach a material balance ("rook against bishop") or an exact
+// pawn structure. A sidecar skip index holds, for every game, the material signature it ends with
+// and 64-bit Bloom filters of the material signatures, piece-only signatures and pawn keys of all
+// its positions. A query scans the skip index in parallel and replays only the games that may match.
+//
+// Material never increases here (there is no promotion), so a game can only reach a signature that
+// lies between its starting and final signatures; that bound and the Bloom filters together discard
+// almost every non-matching game without decoding it.
+//
+// A material signature packs the count of each piece type, 4 bits each, White's P N B R Q in bits
+// 0-19 and Black's in bits 20-39.
+//
+// Skip index layout (big-endian): MAGIC:int  gameCount:long, then per game
+//   offset:long length:int flags:int finalSignature:long materialBloom:long pieceBloom:long pawnBloom:long
+// where offset and length locate the record in the archive and flags bit 0 marks a FEN start.
+//
+// Usage: java MaterialSearch build <archive> <skip index>
+//        java MaterialSearch query <archive> <skip index> [material <KRvKB>] [pawns <FEN board>]
+//                                  [-either] [-limit n]
+// A material query lists each side's pieces after its K, e.g. KRPPvKBP; a * after a side (KR*vKB*)
+// allows any number of that side's pawns. -either also matches with the colours swapped.
+public class MaterialSearch {
+    static final int MAGIC = 0x43484D53;
+    static final int HEADER = 12;
+    static final int ENTRY = 48;
+    static final int BATCH = 512;
+    static final long WHITE_PAWNS = 0xFL;
+    static final long BLACK_PAWNS = 0xFL << 20;
+    static final long ALL = (1L << 40) - 1;
+    static final long START_SIGNATURE = signature(Position.startingPosition());
+
+    private static final ThreadLocal<GameArchive> CODEC = new ThreadLocal<GameArchive>() {
+        protected GameArchive initialValue() {
+            return new GameArchive();
+        }
+    };
+
+    public static long signature(Position p) {
+        long sig = 0;
+        for (int type = Position.PAWN; type <= Position.QUEEN; type++) {
+            sig |= (long) Math.min(15, p.pieceCount(type)) << (4 * (type - 1));
+            sig |= (long) Math.min(15, p.pieceCount(Position.BLACK | type)) << (20 + 4 * (type - 1));
+        }
+        return sig;
+    }
+
+    // The same material with the colours swapped.
+    static long swap(long sig) {
+        return (sig >>> 20) | ((sig & ((1L << 20) - 1)) << 20);
+    }
+
+    static long bloomBits(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        x ^= x >>> 31;
+        return (1L << (x & 63)) | (1L << ((x >>> 6) & 63));
+    }
+
+    // True if every 4-bit count of a selected by mask is at most the same count of b.
+    static boolean atMost(long a, long b, long mask) {
+        for (int shift = 0; shift < 40; shift += 4) {
+            if ((mask >>> shift & 0xF) != 0 && (a >>> shift & 0xF) > (b >>> shift & 0xF)) return false;
+        }
+        return true;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("build")) {
+            long start = System.nanoTime();
+            long games = build(Paths.get(args[1]), Paths.get(args[2]));
+            System.out.printf("%d games indexed in %.1f s%n", games, (System.nanoTime() - start) / 1e9);
+        } else if (args.length >= 3 && args[0].equals("query")) {
+            Query q = new Query();
+            int limit = 50;
+            for (int i = 3; i < args.length; i++) {
+                if (args[i].equals("material")) q.material(args[++i]);
+                else if (args[i].equals("pawns")) q.pawns(args[++i]);
+                else if (args[i].equals("-either")) q.either = true;
+                else if (args[i].equals("-limit")) limit = Integer.parseInt(args[++i]);
+                else throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+            long start = System.nanoTime();
+            Result r = query(Paths.get(args[1]), Paths.get(args[2]), q);
+            for (int i = 0; i < Math.min(limit, r.matches.size()); i++) {
+                Match m = r.matches.get(i);
+                System.out.println("game " + m.game + " (" + m.record.white + " - " + m.record.black + " "
+                        + m.record.result + ") ply " + m.ply + ": " + m.fen);
+            }
+            System.out.printf("%d matches in %d games, %d replayed, %.2f s%n", r.matches.size(), r.games,
+                    r.candidates, (System.nanoTime() - start) / 1e9);
+        } else {
+            System.out.println("Usage: java MaterialSearch build <archive> <skip index>");
+            System.out.println("       java MaterialSearch query <archive> <skip index> [material <KRvKB>]"
+                    + " [pawns <FEN board>] [-either] [-limit n]");
+        }
+    }
+
+    // Writes the skip index for archive, replaying the games on all cores. Returns the game count.
+    public static long build(Path archive, Path index) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+        long games = 0;
+        GameArchive.Reader reader = new GameArchive.Reader(Files.newInputStream(archive));
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(index), 1 << 16)) {
+            DataOutputStream out = new DataOutputStream(file);
+            out.writeInt(MAGIC);
+            out.writeLong(0);
+            byte[] raw;
+            List<byte[]> batch = new ArrayList<byte[]>(BATCH);
+            List<Long> offsets = new ArrayList<Long>(BATCH);
+            while (true) {
+                raw = reader.nextRaw();
+                if (raw != null) {
+                    batch.add(raw);
+                    offsets.add(reader.getRecordOffset());
+                    games++;
+                }
+                if (batch.size() == BATCH || (raw == null && !batch.isEmpty())) {
+                    pending.add(pool.submit(summarize(batch, offsets)));
+                    batch = new ArrayList<byte[]>(BATCH);
+                    offsets = new ArrayList<Long>(BATCH);
+                }
+                // Write finished batches in order, keeping a bounded number in flight.
+                while (!pending.isEmpty() && (pending.size() > 2 * threads || raw == null)) {
+                    out.write(pending.poll().get());
+                }
+                if (raw == null) break;
+            }
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            reader.close();
+            pool.shutdownNow();
+        }
+        try (FileChannel ch = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(8);
+            b.putLong(games).flip();
+            ch.write(b, 4);
+        }
+        return games;
+    }
+
+    private static Callable<byte[]> summarize(final List<byte[]> batch, final List<Long> offsets) {
+        return new Callable<byte[]>() {
+            public byte[] call() {
+                ByteBuffer out = ByteBuffer.allocate(batch.size() * ENTRY);
+                GameArchive codec = CODEC.get();
+                for (int i = 0; i < batch.size(); i++) {
+                    GameRecord r = codec.decode(batch.get(i));
+                    Position p = r.startPosition();
+                    long material = 0;
+                    long pieces = 0;
+                    long pawns = 0;
+                    long sig = -1;
+                    long pawnKey = 0;
+                    for (int ply = 0; ; ply++) {
+                        long s = signature(p);
+                        if (s != sig) {
+                            sig = s;
+                            material |= bloomBits(s);
+                            pieces |= bloomBits(s & ~(WHITE_PAWNS | BLACK_PAWNS));
+                        }
+                        if (ply == 0 || p.getPawnKey() != pawnKey) {
+                            pawnKey = p.getPawnKey();
+                            pawns |= bloomBits(pawnKey);
+                        }
+                        if (ply == r.moves.length) break;
+                        p.makeMove(r.moves[ply]);
+                    }
+                    out.putLong(offsets.get(i)).putInt(batch.get(i).length).putInt(r.startFen != null ? 1 : 0)
+                            .putLong(sig).putLong(material).putLong(pieces).putLong(pawns);
+                }
+                return out.array();
+            }
+        };
+    }
+
+    // What to look for. Material and pawn conditions must both hold in the same position.
+    public static class Query {
+        boolean hasMaterial;
+        long target;
+        long mask = ALL;
+        boolean hasPawns;
+        long pawnKey;
+        long pawnSignature;
+        boolean either;
+
+        // spec is e.g. "KRPPvKBP" or "KR*vKB*".
+        public void material(String spec) {
+            String[] sides = spec.toUpperCase().split("V");
+            if (sides.length != 2) throw new IllegalArgumentException("Bad material " + spec);
+            hasMaterial = true;
+            target = 0;
+            mask = ALL;
+            for (int side = 0; side < 2; side++) {
+                for (char c : sides[side].toCharArray()) {
+                    if (c == 'K') continue;
+                    if (c == '*') {
+                        mask &= side == 0 ? ~WHITE_PAWNS : ~BLACK_PAWNS;
+                        continue;
+                    }
+                    int type = "PNBRQ".indexOf(c) + 1;
+                    if (type == 0) throw new IllegalArgumentException("Bad material " + spec);
+                    target += 1L << (20 * side + 4 * (type - 1));
+                }
+            }
+            target &= mask;
+        }
+
+        // board is the piece-placement field of a FEN holding only the pawns, e.g. "8/pp3ppp/...".
+        public void pawns(String board) {
+            Position p = Position.fromFen(board + " w - - 0 1");
+            hasPawns = true;
+            pawnKey = p.getPawnKey();
+            pawnSignature = signature(p) & (WHITE_PAWNS | BLACK_PAWNS);
+        }
+
+        // Whether a game summarised by a skip-index entry may match.
+        boolean candidate(boolean fenStart, long finalSig, long material, long pieces, long pawns) {
+            if (hasPawns) {
+                long m = WHITE_PAWNS | BLACK_PAWNS;
+                if ((pawns & bloomBits(pawnKey)) != bloomBits(pawnKey)) return false;
+                if (!atMost(finalSig, pawnSignature, m)) return false;
+                if (!fenStart && !atMost(pawnSignature, START_SIGNATURE, m)) return false;
+            }
+            if (!hasMaterial) return true;
+            return mayReach(target, mask, fenStart, finalSig, material, pieces)
+                    || (either && mayReach(swap(target), swap(mask), fenStart, finalSig, material, pieces));
+        }
+
+        private static boolean mayReach(long t, long m, boolean fenStart, long finalSig, long material, long pieces) {
+            long bits = m == ALL ? bloomBits(t) : bloomBits(t & ~(WHITE_PAWNS | BLACK_PAWNS));
+            if (((m == ALL ? material : pieces) & bits) != bits) return false;
+            if (!atMost(finalSig, t, m)) return false;
+            return fenStart || atMost(t, START_SIGNATURE, m);
+        }
+
+        boolean matches(Position p) {
+            if (hasPawns && p.getPawnKey() != pawnKey) return false;
+            if (!hasMaterial) return true;
+            long sig = signature(p);
+            return (sig & mask) == target || (either && (sig & swap(mask)) == swap(target));
+        }
+    }
+
+    public static class Match {
+        public final long game;
+        public final int ply;
+        public final String fen;
+        public final GameRecord record;
+
+        Match(long game, int ply, String fen, GameRecord record) {
+            this.game = game;
+            this.ply = ply;
+            this.fen = fen;
+            this.record = record;
+        }
+    }
+
+    public static class Result {
+        public long games;
+        public long candidates;
+        public final List<Match> matches = new ArrayList<Match>();
+    }
+
+    // Runs q over every game, one contiguous range of the skip index per core. Matches are in
+    // archive order, each at the first position of its game that satisfies q.
+    public static Result query(Path archive, Path index, final Query q)
+            throws IOException, InterruptedException, ExecutionException {
+        final FileChannel games = FileChannel.open(archive, StandardOpenOption.READ);
+        final FileChannel skip = FileChannel.open(index, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            skip.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) throw new IOException("not a material skip index");
+            final long count = header.getLong();
+            int threads = Runtime.getRuntime().availableProcessors();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<Result>> parts = new ArrayList<Future<Result>>();
+            long per = (count + threads - 1) / threads;
+            for (int t = 0; t < threads; t++) {
+                final long first = t * per;
+                final long last = Math.min(count, first + per);
+                if (first >= last) break;
+                parts.add(pool.submit(new Callable<Result>() {
+                    public Result call() throws IOException {
+                        return scan(games, skip, first, last, q);
+                    }
+                }));
+            }
+            Result total = new Result();
+            for (Future<Result> f : parts) {
+                Result r = f.get();
+                total.games += r.games;
+                total.candidates += r.candidates;
+                total.matches.addAll(r.matches);
+            }
+            pool.shutdown();
+            Collections.sort(total.matches, new Comparator<Match>() {
+                public int compare(Match a, Match b) {
+                    return Long.compare(a.game, b.game);
+                }
+            });
+            return total;
+        } finally {
+            games.close();
+            skip.close();
+        }
+    }
+
+    private static Result scan(FileChannel games, FileChannel skip, long first, long last, Query q)
+            throws IOException {
+        Result r = new Result();
+        GameArchive codec = CODEC.get();
+        ByteBuffer buf = ByteBuffer.allocate(ENTRY * 1024);
+        for (long g = first; g < last; ) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), (last - g) * ENTRY));
+            long at = HEADER + g * ENTRY;
+            while (buf.hasRemaining()) {
+                if (skip.read(buf, at + buf.position()) < 0) throw new IOException("truncated skip index");
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                long offset = buf.getLong();
+                int length = buf.getInt();
+                boolean fenStart = (buf.getInt() & 1) != 0;
+                long finalSig = buf.getLong();
+                long material = buf.getLong();
+                long pieces = buf.getLong();
+                long pawns = buf.getLong();
+                r.games++;
+                if (q.candidate(fenStart, finalSig, material, pieces, pawns)) {
+                    r.candidates++;
+                    Match m = replay(games, offset, length, g, q, codec);
+                    if (m != null) r.matches.add(m);
+                }
+                g++;
+            }
+        }
+        return r;
+    }
+
+    private static Match replay(FileChannel games, long offset, int length, long game, Query q, GameArchive codec)
+            throws IOException {
+        ByteBuffer raw = ByteBuffer.allocate(length);
+        while (raw.hasRemaining()) {
+            if (games.read(raw, offset + raw.position()) < 0) throw new IOException("truncated archive");
+        }
+        GameRecord record = codec.decode(raw.array());
+        Position p = record.startPosition();
+        for (int ply = 0; ; ply++) {
+            if (q.matches(p)) return new Match(game, ply, p.toFen(), record);
+            if (ply == record.moves.length) return null;
+            p.makeMove(record.moves[ply]);
+        }
+    }
+}
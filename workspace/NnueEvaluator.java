@@ -0,0 +1,120 @@
+// Neural network evaluation using an NnueNetwork. The first layer is the expensive one (768 inputs),
+// but only a few inputs change per move, so it is kept as two accumulators (one per side's point of
+// view) that Position updates by adding or subtracting one weight column per piece added or removed.
+// evaluate() then only runs the small dense layers. Plugs into Position like ClassicalEvaluator.
+//
+// The dense layers go through a Kernel. The default one is a plain scalar loop. NnueVectorKernel,
+// in vector/, does the same with jdk.incubator.vector and is about four times faster per evaluate();
+// it is used when it is on the class path and the JVM runs with --add-modules jdk.incubator.vector.
+// It lives in its own directory so the rest of the tree still compiles without the incubator module:
+//
+//   javac --add-modules jdk.incubator.vector -d out *.java vector/*.java
+//   java --add-modules jdk.incubator.vector -cp out Match ...
+public class NnueEvaluator implements Evaluator {
+    // One dense layer: out[o] = clip((bias[o] + sum of in[i] * weights[o][i]) >> SHIFT).
+    interface Kernel {
+        void dense(int[] in, byte[] weights, int[] bias, int[] out);
+    }
+
+    static final Kernel SCALAR = new Kernel() {
+        public void dense(int[] in, byte[] weights, int[] bias, int[] out) {
+            int n = in.length;
+            for (int o = 0; o < out.length; o++) {
+                int base = o * n;
+                int sum = 0;
+                for (int i = 0; i < n; i++) {
+                    sum += in[i] * weights[base + i];
+                }
+                out[o] = clip((bias[o] + sum) >> NnueNetwork.SHIFT);
+            }
+        }
+    };
+
+    // The vector kernel if it can be loaded, otherwise SCALAR. -Dnnue.scalar=true forces SCALAR.
+    static final Kernel KERNEL = loadKernel();
+
+    private final NnueNetwork net;
+    private final short[] whiteAcc;
+    private final short[] blackAcc;
+
+    // Scratch space for the dense layers.
+    private final int[] input;
+    private final int[] hidden1;
+    private final int[] hidden2;
+
+    public NnueEvaluator(NnueNetwork net) {
+        this.net = net;
+        whiteAcc = new short[net.hidden];
+        blackAcc = new short[net.hidden];
+        input = new int[2 * net.hidden];
+        hidden1 = new int[net.l1];
+        hidden2 = new int[net.l2];
+    }
+
+    public void reset(Position p) {
+        System.arraycopy(net.featureBias, 0, whiteAcc, 0, net.hidden);
+        System.arraycopy(net.featureBias, 0, blackAcc, 0, net.hidden);
+        for (int sq = 0; sq < 64; sq++) {
+            int piece = p.pieceAt(sq);
+            if (piece != Position.EMPTY) pieceAdded(piece, sq);
+        }
+    }
+
+    public void pieceAdded(int piece, int sq) {
+        add(whiteAcc, NnueNetwork.feature(piece, sq, true) * net.hidden);
+        add(blackAcc, NnueNetwork.feature(piece, sq, false) * net.hidden);
+    }
+
+    public void pieceRemoved(int piece, int sq) {
+        subtract(whiteAcc, NnueNetwork.feature(piece, sq, true) * net.hidden);
+        subtract(blackAcc, NnueNetwork.feature(piece, sq, false) * net.hidden);
+    }
+
+    private void add(short[] acc, int offset) {
+        short[] w = net.featureWeights;
+        for (int i = 0; i < acc.length; i++) {
+            acc[i] = (short) (acc[i] + w[offset + i]);
+        }
+    }
+
+    private void subtract(short[] acc, int offset) {
+        short[] w = net.featureWeights;
+        for (int i = 0; i < acc.length; i++) {
+            acc[i] = (short) (acc[i] - w[offset + i]);
+        }
+    }
+
+    public int evaluate(Position p) {
+        int h = net.hidden;
+        // The side to move's accumulator always goes first.
+        short[] us = p.whiteToMove() ? whiteAcc : blackAcc;
+        short[] them = p.whiteToMove() ? blackAcc : whiteAcc;
+        for (int i = 0; i < h; i++) {
+            input[i] = clip(us[i]);
+            input[h + i] = clip(them[i]);
+        }
+        KERNEL.dense(input, net.l1Weights, net.l1Bias, hidden1);
+        KERNEL.dense(hidden1, net.l2Weights, net.l2Bias, hidden2);
+        int out = net.outBias;
+        byte[] w = net.outWeights;
+        for (int i = 0; i < hidden2.length; i++) {
+            out += hidden2[i] * w[i];
+        }
+        return out / net.outputDivisor;
+    }
+
+    // Without the class or the incubator module this fails with a ClassNotFoundException or a
+    // LinkageError, and the scalar loop is used.
+    private static Kernel loadKernel() {
+        if (Boolean.getBoolean("nnue.scalar")) return SCALAR;
+        try {
+            return (Kernel) Class.forName("NnueVectorKernel").getDeclaredConstructor().newInstance();
+        } catch (Exception | LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+    static int clip(int x) {
+        return Math.max(0, Math.min(NnueNetwork.CLIP, x));
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// The weights of an efficiently updatable neural network ("NNUE") evaluator. Loaded once and
+// shared read-only by every NnueEvaluator, so many positions (or threads) can use one network.
+//
+// The network is 768 -> 2 x H -> L1 -> L2 -> 1. The 768 inputs are one per (colour, piece type,
+// square), seen from each side's point of view; the first layer is kept as two running sums
+// (accumulators) by NnueEvaluator, and the small dense layers after it are computed per evaluation.
+//
+// File layout, all little-endian:
+//   int magic ("NNUE" = 0x45554E4E), int H, int L1, int L2, int outputDivisor
+//   short[768 * H] feature weights (feature-major), short[H] feature biases
+//   byte[L1 * 2H] layer 1 weights (output-major), int[L1] layer 1 biases
+//   byte[L2 * L1] layer 2 weights (output-major), int[L2] layer 2 biases
+//   byte[L2] output weights, int output bias
+public class NnueNetwork {
+    public static final int MAGIC = 0x45554E4E;
+    public static final int FEATURES = 768;
+    // Magic and the four dimensions.
+    static final int HEADER_BYTES = 20;
+    // Activations are clipped to [0, CLIP]; dense-layer sums are scaled down by 2^SHIFT.
+    static final int CLIP = 127;
+    static final int SHIFT = 6;
+
+    final int hidden;
+    final int l1;
+    final int l2;
+    final int outputDivisor;
+
+    final short[] featureWeights;
+    final short[] featureBias;
+    final byte[] l1Weights;
+    final int[] l1Bias;
+    final byte[] l2Weights;
+    final int[] l2Bias;
+    final byte[] outWeights;
+    final int outBias;
+
+    // Pre-condition: file is a network in the layout above.
+    // Post-condition: the file is memory-mapped and its weights copied into flat arrays, which the
+    // evaluation loops can walk far faster than buffer views. Throws IOException if the file is not
+    // a network, or its size does not match the dimensions in its header.
+    public static NnueNetwork load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a network file: " + file);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.getInt() != MAGIC) throw new IOException("Not a network file: " + file);
+            return new NnueNetwork(map);
+        }
+    }
+
+    private NnueNetwork(MappedByteBuffer map) throws IOException {
+        hidden = map.getInt();
+        l1 = map.getInt();
+        l2 = map.getInt();
+        outputDivisor = map.getInt();
+        if (hidden <= 0 || l1 <= 0 || l2 <= 0 || outputDivisor <= 0) {
+            throw new IOException("Bad network dimensions");
+        }
+        // Check the sizes before allocating, so a corrupt header cannot ask for gigabytes. Each
+        // array must fit in an int, which also keeps the byte count below from overflowing.
+        if ((long) FEATURES * hidden > Integer.MAX_VALUE || 2L * l1 * hidden > Integer.MAX_VALUE
+                || (long) l2 * l1 > Integer.MAX_VALUE) {
+            throw new IOException("Bad network dimensions");
+        }
+        long bytes = 2L * FEATURES * hidden + 2L * hidden + 2L * l1 * hidden + 4L * l1 + (long) l2 * l1
+                + 4L * l2 + l2 + 4;
+        if (bytes != map.remaining()) {
+            throw new IOException("Network file has " + map.remaining() + " bytes of weights, its header needs "
+                    + bytes);
+        }
+        featureWeights = new short[FEATURES * hidden];
+        featureBias = new short[hidden];
+        l1Weights = new byte[l1 * 2 * hidden];
+        l1Bias = new int[l1];
+        l2Weights = new byte[l2 * l1];
+        l2Bias = new int[l2];
+        outWeights = new byte[l2];
+
+        map.asShortBuffer().get(featureWeights);
+        map.position(map.position() + featureWeights.length * 2);
+        map.asShortBuffer().get(featureBias);
+        map.position(map.position() + featureBias.length * 2);
+        map.get(l1Weights);
+        map.asIntBuffer().get(l1Bias);
+        map.position(map.position() + l1Bias.length * 4);
+        map.get(l2Weights);
+        map.asIntBuffer().get(l2Bias);
+        map.position(map.position() + l2Bias.length * 4);
+        map.get(outWeights);
+        outBias = map.getInt();
+    }
+
+    // Index of the input for piece on sq as seen by the given side. Black sees the board flipped
+    // and its own pieces as "ours", so both accumulators share the same weights.
+    static int feature(int piece, int sq, boolean whitePerspective) {
+        boolean ours = Position.isWhite(piece) == whitePerspective;
+        int orientedSq = whitePerspective ? sq : sq ^ 56;
+        return ((ours ? 0 : 6) + Position.type(piece) - 1) * 64 + orientedSq;
+    }
+}
@@ -28,6 +28,10 @@ public class Pawn extends Piece{
     //Post-condition: Returns a list of tiles which the piece we are currently looking at controls.
     public ArrayList<Square> getControlledSquares(Square [][] board, Square start) {
       ArrayList<Square> tile = new ArrayList<Square>(); 
+      //no promotion, so a pawn on the far row is stuck and controls nothing
+      if (start.getRow() == (color ? 0 : 7)){
+        return tile;
+      }
       if (color == true){
       if(start.getCol() != 7){
         tile.add(board[start.getRow() - 1][start.getCol() + 1]);
@@ -60,6 +64,9 @@ public class Pawn extends Piece{
   
     public ArrayList<Square> getLegalMoves(Board b, Square start){
       ArrayList<Square> tile = new ArrayList<Square>(); 
+      if (start.getRow() == (color ? 0 : 7)){
+        return tile;
+      }
       if(color == true){
       //if moving for the first time 
       int potential = start.getRow();
@@ -67,7 +74,7 @@ public class Pawn extends Piece{
       if(b.getSquareArray()[potential][start.getCol()].isOccupied() == false){
         tile.add(b.getSquareArray()[potential][start.getCol()]);
         }
-      if (start.getRow() == 6){
+      if (start.getRow() == 6 && b.getSquareArray()[potential][start.getCol()].isOccupied() == false){
         potential = potential - 1;
         if(b.getSquareArray()[potential][start.getCol()].isOccupied() == false){
           tile.add(b.getSquareArray()[potential][start.getCol()]);
@@ -88,7 +95,7 @@ public class Pawn extends Piece{
       if(b.getSquareArray()[potential][start.getCol()].isOccupied() == false){
         tile.add(b.getSquareArray()[potential][start.getCol()]);
         }
-      if (start.getRow() == 1){
+      if (start.getRow() == 1 && b.getSquareArray()[potential][start.getCol()].isOccupied() == false){
         potential = potential + 1;
         if(b.getSquareArray()[potential][start.getCol()].isOccupied() == false){
           tile.add(b.getSquareArray()[potential][start.getCol()]);
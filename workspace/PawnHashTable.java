@@ -0,0 +1,63 @@
+// A fixed-size cache of pawn-structure results keyed by Position.getPawnKey(). Pawns move rarely, so
+// sibling positions in a search almost always share a pawn structure and the expensive pawn terms
+// are computed once and then looked up. Entries live in parallel primitive arrays (no per-entry
+// objects); a colliding structure simply overwrites the slot.
+public class PawnHashTable {
+    private final long[] keys;
+    private final int[] mg;
+    private final int[] eg;
+    private final long[] passed;
+    private final int mask;
+
+    private long probes;
+    private long hits;
+
+    // Pre-condition: entries is a power of two.
+    public PawnHashTable(int entries) {
+        if (Integer.bitCount(entries) != 1) {
+            throw new IllegalArgumentException("Pawn hash size must be a power of two: " + entries);
+        }
+        keys = new long[entries];
+        mg = new int[entries];
+        eg = new int[entries];
+        passed = new long[entries];
+        mask = entries - 1;
+    }
+
+    public int slot(long pawnKey) {
+        return (int) pawnKey & mask;
+    }
+
+    // Returns true if slot holds the entry for pawnKey. An empty table "holds" the pawnless
+    // structure (key 0), whose scores are all zero anyway.
+    public boolean matches(int slot, long pawnKey) {
+        probes++;
+        if (keys[slot] != pawnKey) return false;
+        hits++;
+        return true;
+    }
+
+    public void store(int slot, long pawnKey, int mgScore, int egScore, long passedPawns) {
+        keys[slot] = pawnKey;
+        mg[slot] = mgScore;
+        eg[slot] = egScore;
+        passed[slot] = passedPawns;
+    }
+
+    public int mg(int slot) {
+        return mg[slot];
+    }
+
+    public int eg(int slot) {
+        return eg[slot];
+    }
+
+    // Squares (bit row * 8 + col) of all passed pawns of both colours.
+    public long passedPawns(int slot) {
+        return passed[slot];
+    }
+
+    public double getHitRate() {
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+}
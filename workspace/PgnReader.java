@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reads games from PGN text one at a time, so files of any size can be streamed. Keeps the tag
+// pairs, the main line's moves as written and the result; comments, variations, NAGs and move
+// numbers are skipped.
+public class PgnReader {
+    public static class Game {
+        public final Map<String, String> tags = new LinkedHashMap<String, String>();
+        public final List<String> moves = new ArrayList<String>();
+        public String result = "*";
+
+        // The position the moves start from: the FEN tag if there is one.
+        public Position startPosition() {
+            String fen = tags.get("FEN");
+            return fen == null ? Position.startingPosition() : Position.fromFen(fen);
+        }
+    }
+
+    private final Reader in;
+    private int peeked = -2;
+
+    public PgnReader(Reader in) {
+        this.in = in;
+    }
+
+    private int read() throws IOException {
+        if (peeked != -2) {
+            int c = peeked;
+            peeked = -2;
+            return c;
+        }
+        return in.read();
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) peeked = in.read();
+        return peeked;
+    }
+
+    // The next game, or null at the end of the input.
+    public Game next() throws IOException {
+        Game game = new Game();
+        boolean started = false;
+        // Set once the movetext has begun.
+        boolean inMoves = false;
+        int depth = 0;
+        while (true) {
+            int c = read();
+            if (c < 0) return started ? game : null;
+            if (c == '{') {
+                while ((c = read()) >= 0 && c != '}') { }
+            } else if (c == ';') {
+                while ((c = read()) >= 0 && c != '\n') { }
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (depth > 0) depth--;
+            } else if (c == '[' && depth == 0) {
+                if (inMoves) {
+                    // A tag pair after the moves belongs to the next game: this one has no result.
+                    peeked = c;
+                    return game;
+                }
+                StringBuilder sb = new StringBuilder();
+                while ((c = read()) >= 0 && c != ']') {
+                    sb.append((char) c);
+                    if (c == '"') {
+                        while ((c = read()) >= 0 && c != '"') {
+                            if (c == '\\') c = read();
+                            sb.append((char) c);
+                        }
+                        sb.append('"');
+                    }
+                }
+                String tag = sb.toString().trim();
+                int space = tag.indexOf(' ');
+                if (space > 0) {
+                    String value = tag.substring(space + 1).trim();
+                    if (value.length() >= 2 && value.startsWith("\"")) value = value.substring(1, value.length() - 1);
+                    game.tags.put(tag.substring(0, space), value);
+                }
+                started = true;
+            } else if (!Character.isWhitespace(c)) {
+                StringBuilder sb = new StringBuilder().append((char) c);
+                while (peek() >= 0 && !Character.isWhitespace(peek()) && "{}();[".indexOf(peek()) < 0) {
+                    sb.append((char) read());
+                }
+                String token = sb.toString();
+                started = true;
+                inMoves = true;
+                if (depth > 0 || token.startsWith("$")) continue;
+                if (token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2") || token.equals("*")) {
+                    game.result = token;
+                    return game;
+                }
+                // Strip a move number, which may be glued to the move ("12.e4", "12...Nf6").
+                int i = 0;
+                while (i < token.length() && Character.isDigit(token.charAt(i))) i++;
+                if (i < token.length() && token.charAt(i) == '.') {
+                    while (i < token.length() && token.charAt(i) == '.') i++;
+                    token = token.substring(i);
+                } else if (i == token.length()) {
+                    token = "";
+                }
+                if (!token.isEmpty()) game.moves.add(token);
+            }
+        }
+    }
+}
@@ -6,19 +6,49 @@ import java.util.ArrayList;
 import java.util.List;
 import javax.imageio.ImageIO;
 
+// A piece holds only what never changes, its colour and image, so one instance of each of the
+// twelve kinds (see of) is shared by every square and every game; where the pieces stand is the
+// board's business.
 public class Piece {
-	protected boolean color;
-	protected BufferedImage img;
+	protected final boolean color;
+	protected final BufferedImage img;
+
+	// The shared instances, indexed by Position piece code. Created on first use, after Piece
+	// itself is initialised.
+	private static class Flyweights {
+		static final Piece[] BY_CODE = new Piece[16];
+
+		static {
+			BY_CODE[Position.PAWN] = new Pawn(true, "wpawn.png");
+			BY_CODE[Position.KNIGHT] = new Knight(true, "wknight.png");
+			BY_CODE[Position.BISHOP] = new Bishop(true, "wbishop.png");
+			BY_CODE[Position.ROOK] = new Rook(true, "wrook.png");
+			BY_CODE[Position.QUEEN] = new Queen(true, "wqueen.png");
+			BY_CODE[Position.KING] = new King(true, "wking.png");
+			BY_CODE[Position.BLACK | Position.PAWN] = new Pawn(false, "bpawn.png");
+			BY_CODE[Position.BLACK | Position.KNIGHT] = new Knight(false, "bknight.png");
+			BY_CODE[Position.BLACK | Position.BISHOP] = new Bishop(false, "bbishop.png");
+			BY_CODE[Position.BLACK | Position.ROOK] = new Rook(false, "brook.png");
+			BY_CODE[Position.BLACK | Position.QUEEN] = new Queen(false, "bqueen.png");
+			BY_CODE[Position.BLACK | Position.KING] = new King(false, "bking.png");
+		}
+	}
 
 	public Piece(boolean color, String img_file) {
 		this.color = color;
+		BufferedImage image = null;
 		try {
-			if (this.img == null) {
-				this.img = ImageIO.read(getClass().getResource(img_file));
-			}
+			image = ImageIO.read(getClass().getResource(img_file));
 		} catch (IOException e) {
 			System.out.println("File not found: " + e.getMessage());
 		}
+		this.img = image;
+	}
+
+	// Pre-condition: code is a Position piece code other than EMPTY.
+	// Post-condition: returns the shared instance of that piece.
+	public static Piece of(int code) {
+		return Flyweights.BY_CODE[code];
 	}
 
 	public boolean getColor() {
@@ -0,0 +1,726 @@
+import java.util.Arrays;
+
+// A headless copy of the game used for rule checks and by the engine. It knows nothing about Swing:
+// squares are numbered row * 8 + col with the same rows and columns as Board (row 0 is black's back
+// row, white pawns move towards row 0) and each square holds a small int piece code. The pieces move
+// exactly like the Piece subclasses, including our custom Rook that slides at most three squares.
+// Moves are plain ints (see move()) and are made and unmade in place, so nothing here allocates
+// once the position exists.
+public class Position {
+    public static final int EMPTY = 0;
+    public static final int PAWN = 1;
+    public static final int KNIGHT = 2;
+    public static final int BISHOP = 3;
+    public static final int ROOK = 4;
+    public static final int QUEEN = 5;
+    public static final int KING = 6;
+    // Added to the piece type for black pieces, so BLACK | ROOK is a black rook.
+    public static final int BLACK = 8;
+
+    // How far the custom Rook may slide.
+    public static final int ROOK_RANGE = 3;
+
+    // Never a real move, since a piece cannot move to its own square.
+    public static final int NO_MOVE = 0;
+
+    // FEN letters, indexed by piece type.
+    static final String PIECE_LETTERS = " pnbrqk";
+
+    // Upper bound on the pseudo-legal moves in any reachable position.
+    public static final int MAX_MOVES = 256;
+
+    // Piece values used by the static exchange evaluation, indexed by piece type.
+    static final int[] SEE_VALUE = {0, 100, 320, 330, 380, 950, 20000};
+
+    // Size of the ring of past hash keys. Repetitions can only happen since the last capture or
+    // pawn move, and the fifty-move rule ends the game 100 plies after that, so 256 is plenty.
+    private static final int HISTORY_SIZE = 256;
+    private static final int HISTORY_MASK = HISTORY_SIZE - 1;
+
+    // Directions 0-3 are orthogonal (up, down, left, right), 4-7 diagonal.
+    private static final int[] DIR_ROW = {-1, 1, 0, 0, -1, -1, 1, 1};
+    private static final int[] DIR_COL = {0, 0, -1, 1, -1, 1, -1, 1};
+
+    // RAYS[sq][dir] lists the squares from sq to the edge of the board in that direction.
+    static final int[][][] RAYS = new int[64][8][];
+    static final int[][] KNIGHT_TARGETS = new int[64][];
+    static final int[][] KING_TARGETS = new int[64][];
+
+    static {
+        int[][] knightJumps = {{1, 2}, {-1, 2}, {1, -2}, {-1, -2}, {2, 1}, {-2, 1}, {2, -1}, {-2, -1}};
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq >> 3;
+            int col = sq & 7;
+            for (int dir = 0; dir < 8; dir++) {
+                int[] ray = new int[8];
+                int n = 0;
+                for (int r = row + DIR_ROW[dir], c = col + DIR_COL[dir];
+                        r >= 0 && r < 8 && c >= 0 && c < 8; r += DIR_ROW[dir], c += DIR_COL[dir]) {
+                    ray[n++] = r * 8 + c;
+                }
+                RAYS[sq][dir] = Arrays.copyOf(ray, n);
+            }
+            KNIGHT_TARGETS[sq] = targets(row, col, knightJumps);
+            KING_TARGETS[sq] = targets(row, col, new int[][] {{-1, 0}, {1, 0}, {0, -1}, {0, 1},
+                    {-1, -1}, {-1, 1}, {1, -1}, {1, 1}});
+        }
+    }
+
+    private static int[] targets(int row, int col, int[][] offsets) {
+        int[] result = new int[offsets.length];
+        int n = 0;
+        for (int[] o : offsets) {
+            int r = row + o[0];
+            int c = col + o[1];
+            if (r >= 0 && r < 8 && c >= 0 && c < 8) result[n++] = r * 8 + c;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private final int[] squares = new int[64];
+    // Bit sq is set when squares[sq] is occupied.
+    private long occupied;
+    // Square of the white king at index 0 and of the black king at index 1.
+    private final int[] kingSquare = new int[2];
+    private boolean whiteToMove = true;
+    // Zobrist hash of the position (see Zobrist), and of the pawns alone.
+    private long key;
+    private long pawnKey;
+    // Plies since the last capture or pawn move.
+    private int halfmoveClock;
+    // Starts at 1 and goes up after each black move, as in FEN.
+    private int fullmoveNumber = 1;
+    // Number of pieces on the board for each piece code.
+    private final int[] pieceCount = new int[16];
+    // Told about every piece added or removed, may be null.
+    private Evaluator evaluator;
+
+    // For each move made, the captured piece (low 4 bits) and the halfmove clock before the move,
+    // so unmakeMove can restore both.
+    private int[] undoStack = new int[256];
+    private int ply;
+    // keyHistory[p & HISTORY_MASK] is the key of the position before move number p was made.
+    private final long[] keyHistory = new long[HISTORY_SIZE];
+
+    // Moves of a single piece never exceed 27 (a queen in the centre of an empty board).
+    private final int[] scratch = new int[32];
+    // Swap list for see(); at most 32 pieces can take part in an exchange.
+    private final int[] seeGain = new int[33];
+
+    // Pre-condition: none.
+    // Post-condition: returns the position Board.initializePieces sets up, white to move.
+    public static Position startingPosition() {
+        Position p = new Position();
+        int[] backRow = {ROOK, KNIGHT, BISHOP, QUEEN, KING, BISHOP, KNIGHT, ROOK};
+        for (int col = 0; col < 8; col++) {
+            p.put(square(0, col), BLACK | backRow[col]);
+            p.put(square(1, col), BLACK | PAWN);
+            p.put(square(6, col), PAWN);
+            p.put(square(7, col), backRow[col]);
+        }
+        return p;
+    }
+
+    // Pre-condition: none.
+    // Post-condition: this position is the same as other, including the side to move, the clocks
+    // and the keys repetition checks need, so a worker can fork a position without building it up
+    // again. Only fixed-size primitive arrays are copied (no object graph), and of the key history
+    // only the plies since the last capture or pawn move. Moves made before the copy cannot be
+    // unmade on it. This position keeps its own evaluator, which is reset to the new contents.
+    public void copyFrom(Position other) {
+        System.arraycopy(other.squares, 0, squares, 0, 64);
+        System.arraycopy(other.pieceCount, 0, pieceCount, 0, pieceCount.length);
+        kingSquare[0] = other.kingSquare[0];
+        kingSquare[1] = other.kingSquare[1];
+        occupied = other.occupied;
+        whiteToMove = other.whiteToMove;
+        key = other.key;
+        pawnKey = other.pawnKey;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        ply = other.ply;
+        if (undoStack.length <= ply) undoStack = new int[ply * 2];
+        int n = Math.min(Math.min(halfmoveClock, ply), HISTORY_SIZE);
+        for (int back = 1; back <= n; back++) {
+            keyHistory[(ply - back) & HISTORY_MASK] = other.keyHistory[(ply - back) & HISTORY_MASK];
+        }
+        if (evaluator != null) evaluator.reset(this);
+    }
+
+    // Pre-condition: fen is a position in Forsyth-Edwards Notation. The castling and en passant
+    // fields are ignored since this game has neither; the clocks are optional.
+    // Post-condition: returns that position.
+    public static Position fromFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        String[] rows = fields[0].split("/");
+        if (rows.length != 8) throw new IllegalArgumentException("Bad FEN: " + fen);
+        Position p = new Position();
+        for (int row = 0; row < 8; row++) {
+            int col = 0;
+            for (char c : rows[row].toCharArray()) {
+                if (Character.isDigit(c)) {
+                    col += c - '0';
+                } else {
+                    int type = PIECE_LETTERS.indexOf(Character.toLowerCase(c));
+                    if (type <= 0 || col > 7) throw new IllegalArgumentException("Bad FEN: " + fen);
+                    p.put(square(row, col++), Character.isUpperCase(c) ? type : BLACK | type);
+                }
+            }
+            if (col != 8) throw new IllegalArgumentException("Bad FEN: " + fen);
+        }
+        p.setWhiteToMove(fields.length < 2 || fields[1].equals("w"));
+        if (fields.length > 4) p.halfmoveClock = Integer.parseInt(fields[4]);
+        if (fields.length > 5) p.fullmoveNumber = Integer.parseInt(fields[5]);
+        return p;
+    }
+
+    public String toFen() {
+        StringBuilder sb = new StringBuilder();
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                int piece = squares[square(row, col)];
+                if (piece == EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) sb.append(empty);
+                empty = 0;
+                char c = PIECE_LETTERS.charAt(type(piece));
+                sb.append(isWhite(piece) ? Character.toUpperCase(c) : c);
+            }
+            if (empty > 0) sb.append(empty);
+            if (row < 7) sb.append('/');
+        }
+        sb.append(whiteToMove ? " w" : " b").append(" - - ").append(halfmoveClock)
+                .append(' ').append(fullmoveNumber);
+        return sb.toString();
+    }
+
+    // Square names as on a real board: row 7 is rank 1 and col 0 is file a.
+    public static String squareName(int sq) {
+        return "" + (char) ('a' + (sq & 7)) + (char) ('8' - (sq >> 3));
+    }
+
+    // Coordinate notation, e.g. "e2e4", as used by UCI.
+    public static String moveName(int move) {
+        return squareName(from(move)) + squareName(to(move));
+    }
+
+    // Returns the legal move written as name in coordinate notation, or NO_MOVE if there is none.
+    public int parseMove(String name) {
+        if (name.length() != 4 || !isSquareName(name, 0) || !isSquareName(name, 2)) return NO_MOVE;
+        int from = square('8' - name.charAt(1), name.charAt(0) - 'a');
+        int to = square('8' - name.charAt(3), name.charAt(2) - 'a');
+        int[] moves = new int[MAX_MOVES];
+        int n = generateLegalMoves(moves);
+        for (int i = 0; i < n; i++) {
+            if (moves[i] == move(from, to)) return moves[i];
+        }
+        return NO_MOVE;
+    }
+
+    // True if name has a square such as "e4" at index i.
+    private static boolean isSquareName(String name, int i) {
+        char file = name.charAt(i);
+        char rank = name.charAt(i + 1);
+        return file >= 'a' && file <= 'h' && rank >= '1' && rank <= '8';
+    }
+
+    public static int square(int row, int col) {
+        return row * 8 + col;
+    }
+
+    public static int move(int from, int to) {
+        return from | (to << 6);
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >> 6) & 63;
+    }
+
+    public static int type(int piece) {
+        return piece & 7;
+    }
+
+    public static boolean isWhite(int piece) {
+        return piece != EMPTY && (piece & BLACK) == 0;
+    }
+
+    public int pieceAt(int sq) {
+        return squares[sq];
+    }
+
+    public boolean whiteToMove() {
+        return whiteToMove;
+    }
+
+    public void setWhiteToMove(boolean whiteToMove) {
+        if (this.whiteToMove != whiteToMove) key ^= Zobrist.SIDE;
+        this.whiteToMove = whiteToMove;
+    }
+
+    public long getKey() {
+        return key;
+    }
+
+    // Hash of just the pawns, for caching pawn-structure terms.
+    public long getPawnKey() {
+        return pawnKey;
+    }
+
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public void setHalfmoveClock(int halfmoveClock) {
+        this.halfmoveClock = halfmoveClock;
+    }
+
+    public int kingSquare(boolean white) {
+        return kingSquare[white ? 0 : 1];
+    }
+
+    // Attaches an evaluator, which from then on follows every change to this position.
+    public void setEvaluator(Evaluator evaluator) {
+        this.evaluator = evaluator;
+        if (evaluator != null) evaluator.reset(this);
+    }
+
+    public Evaluator getEvaluator() {
+        return evaluator;
+    }
+
+    // Pre-condition: an evaluator is attached.
+    // Post-condition: returns its score in centipawns for the side to move.
+    public int evaluate() {
+        return evaluator.evaluate(this);
+    }
+
+    // Places piece on an empty square (or clears it when piece is EMPTY). Used to set positions up.
+    public void put(int sq, int piece) {
+        key ^= Zobrist.PIECE_SQUARE[squares[sq]][sq] ^ Zobrist.PIECE_SQUARE[piece][sq];
+        if (type(squares[sq]) == PAWN) pawnKey ^= Zobrist.PIECE_SQUARE[squares[sq]][sq];
+        if (type(piece) == PAWN) pawnKey ^= Zobrist.PIECE_SQUARE[piece][sq];
+        if (evaluator != null) {
+            if (squares[sq] != EMPTY) evaluator.pieceRemoved(squares[sq], sq);
+            if (piece != EMPTY) evaluator.pieceAdded(piece, sq);
+        }
+        pieceCount[squares[sq]]--;
+        pieceCount[piece]++;
+        squares[sq] = piece;
+        if (piece == EMPTY) occupied &= ~(1L << sq);
+        else occupied |= 1L << sq;
+        if (type(piece) == KING) kingSquare[isWhite(piece) ? 0 : 1] = sq;
+    }
+
+    // Pre-condition: move is legal in this position.
+    // Post-condition: the piece has moved, anything on the target square is captured and the
+    // other side is to move.
+    public void makeMove(int move) {
+        int from = from(move);
+        int to = to(move);
+        int piece = squares[from];
+        int captured = squares[to];
+        if (ply == undoStack.length) undoStack = Arrays.copyOf(undoStack, ply * 2);
+        undoStack[ply] = captured | (halfmoveClock << 4);
+        keyHistory[ply & HISTORY_MASK] = key;
+        ply++;
+        key ^= Zobrist.PIECE_SQUARE[piece][from] ^ Zobrist.PIECE_SQUARE[piece][to]
+                ^ Zobrist.PIECE_SQUARE[captured][to] ^ Zobrist.SIDE;
+        halfmoveClock = (captured != EMPTY || type(piece) == PAWN) ? 0 : halfmoveClock + 1;
+        if (type(piece) == PAWN) pawnKey ^= Zobrist.PIECE_SQUARE[piece][from] ^ Zobrist.PIECE_SQUARE[piece][to];
+        if (type(captured) == PAWN) pawnKey ^= Zobrist.PIECE_SQUARE[captured][to];
+        if (evaluator != null) {
+            if (captured != EMPTY) evaluator.pieceRemoved(captured, to);
+            evaluator.pieceRemoved(piece, from);
+            evaluator.pieceAdded(piece, to);
+        }
+        squares[to] = piece;
+        squares[from] = EMPTY;
+        occupied = (occupied & ~(1L << from)) | (1L << to);
+        pieceCount[captured]--;
+        if (type(piece) == KING) kingSquare[whiteToMove ? 0 : 1] = to;
+        if (!whiteToMove) fullmoveNumber++;
+        whiteToMove = !whiteToMove;
+    }
+
+    // Pre-condition: move is the last move made with makeMove.
+    // Post-condition: the position is exactly as it was before that move.
+    public void unmakeMove(int move) {
+        int from = from(move);
+        int to = to(move);
+        int piece = squares[to];
+        int undo = undoStack[--ply];
+        int captured = undo & 15;
+        whiteToMove = !whiteToMove;
+        squares[from] = piece;
+        squares[to] = captured;
+        occupied |= 1L << from;
+        if (captured == EMPTY) occupied &= ~(1L << to);
+        pieceCount[captured]++;
+        if (!whiteToMove) fullmoveNumber--;
+        halfmoveClock = undo >>> 4;
+        key ^= Zobrist.PIECE_SQUARE[piece][from] ^ Zobrist.PIECE_SQUARE[piece][to]
+                ^ Zobrist.PIECE_SQUARE[captured][to] ^ Zobrist.SIDE;
+        if (type(piece) == PAWN) pawnKey ^= Zobrist.PIECE_SQUARE[piece][from] ^ Zobrist.PIECE_SQUARE[piece][to];
+        if (type(captured) == PAWN) pawnKey ^= Zobrist.PIECE_SQUARE[captured][to];
+        if (evaluator != null) {
+            evaluator.pieceRemoved(piece, to);
+            evaluator.pieceAdded(piece, from);
+            if (captured != EMPTY) evaluator.pieceAdded(captured, to);
+        }
+        if (type(piece) == KING) kingSquare[whiteToMove ? 0 : 1] = from;
+    }
+
+    // Passes the move to the other side without moving a piece (used by null-move pruning). The
+    // halfmove clock restarts so repetition checks never look back across a null move.
+    public void makeNullMove() {
+        if (ply == undoStack.length) undoStack = Arrays.copyOf(undoStack, ply * 2);
+        undoStack[ply] = EMPTY | (halfmoveClock << 4);
+        keyHistory[ply & HISTORY_MASK] = key;
+        ply++;
+        key ^= Zobrist.SIDE;
+        halfmoveClock = 0;
+        if (!whiteToMove) fullmoveNumber++;
+        whiteToMove = !whiteToMove;
+    }
+
+    public void unmakeNullMove() {
+        halfmoveClock = undoStack[--ply] >>> 4;
+        key ^= Zobrist.SIDE;
+        whiteToMove = !whiteToMove;
+        if (!whiteToMove) fullmoveNumber--;
+    }
+
+    public int pieceCount(int piece) {
+        return pieceCount[piece];
+    }
+
+    // Returns true if the given side has anything besides its king and pawns. Positions without
+    // such pieces are where zugzwang is common.
+    public boolean hasNonPawnMaterial(boolean white) {
+        int colour = white ? 0 : BLACK;
+        return pieceCount[colour | KNIGHT] + pieceCount[colour | BISHOP]
+                + pieceCount[colour | ROOK] + pieceCount[colour | QUEEN] > 0;
+    }
+
+    // Returns how many times the current position occurred before, with the same side to move.
+    // Only positions since the last capture or pawn move can match, so this looks back at most
+    // halfmoveClock plies, two at a time, and never allocates.
+    public int repetitions() {
+        int count = 0;
+        int limit = Math.min(Math.min(halfmoveClock, ply), HISTORY_SIZE);
+        for (int back = 4; back <= limit; back += 2) {
+            if (keyHistory[(ply - back) & HISTORY_MASK] == key) count++;
+        }
+        return count;
+    }
+
+    public boolean isThreefoldRepetition() {
+        return repetitions() >= 2;
+    }
+
+    public boolean isFiftyMoveDraw() {
+        return halfmoveClock >= 100;
+    }
+
+    // Returns true if any piece of the given colour controls sq, in the sense of
+    // Piece.getControlledSquares.
+    public boolean isAttacked(int sq, boolean byWhite) {
+        int colour = byWhite ? 0 : BLACK;
+        int row = sq >> 3;
+        int col = sq & 7;
+
+        // A white pawn attacks from the row below (larger row), a black pawn from the row above.
+        int pawnRow = byWhite ? row + 1 : row - 1;
+        if (pawnRow >= 0 && pawnRow < 8) {
+            if (col > 0 && squares[pawnRow * 8 + col - 1] == (colour | PAWN)) return true;
+            if (col < 7 && squares[pawnRow * 8 + col + 1] == (colour | PAWN)) return true;
+        }
+        for (int t : KNIGHT_TARGETS[sq]) {
+            if (squares[t] == (colour | KNIGHT)) return true;
+        }
+        for (int t : KING_TARGETS[sq]) {
+            if (squares[t] == (colour | KING)) return true;
+        }
+        int[][] rays = RAYS[sq];
+        for (int dir = 0; dir < 4; dir++) {
+            int[] ray = rays[dir];
+            for (int i = 0; i < ray.length; i++) {
+                int p = squares[ray[i]];
+                if (p == EMPTY) continue;
+                if (p == (colour | QUEEN) || (p == (colour | ROOK) && i < ROOK_RANGE)) return true;
+                break;
+            }
+        }
+        for (int dir = 4; dir < 8; dir++) {
+            int[] ray = rays[dir];
+            for (int i = 0; i < ray.length; i++) {
+                int p = squares[ray[i]];
+                if (p == EMPTY) continue;
+                if (p == (colour | QUEEN) || p == (colour | BISHOP)) return true;
+                break;
+            }
+        }
+        return false;
+    }
+
+    // Returns a bitboard of the pieces of both colours that control sq, when only the squares set
+    // in occ count as occupied. Pieces missing from occ are treated as already gone, so sliders
+    // behind them (x-ray attackers) are included instead.
+    public long attackersTo(int sq, long occ) {
+        long attackers = 0;
+        int row = sq >> 3;
+        int col = sq & 7;
+        if (row < 7) {
+            if (col > 0 && squares[sq + 7] == PAWN) attackers |= 1L << (sq + 7);
+            if (col < 7 && squares[sq + 9] == PAWN) attackers |= 1L << (sq + 9);
+        }
+        if (row > 0) {
+            if (col > 0 && squares[sq - 9] == (BLACK | PAWN)) attackers |= 1L << (sq - 9);
+            if (col < 7 && squares[sq - 7] == (BLACK | PAWN)) attackers |= 1L << (sq - 7);
+        }
+        for (int t : KNIGHT_TARGETS[sq]) {
+            if (type(squares[t]) == KNIGHT) attackers |= 1L << t;
+        }
+        for (int t : KING_TARGETS[sq]) {
+            if (type(squares[t]) == KING) attackers |= 1L << t;
+        }
+        int[][] rays = RAYS[sq];
+        for (int dir = 0; dir < 8; dir++) {
+            int[] ray = rays[dir];
+            for (int i = 0; i < ray.length; i++) {
+                int t = ray[i];
+                if ((occ & (1L << t)) == 0) continue;
+                int type = type(squares[t]);
+                if (type == QUEEN || (dir < 4 ? type == ROOK && i < ROOK_RANGE : type == BISHOP)) {
+                    attackers |= 1L << t;
+                }
+                break;
+            }
+        }
+        return attackers & occ;
+    }
+
+    // Static exchange evaluation: the material the side to move wins (negative if it loses) by
+    // making move and then letting both sides keep recapturing on the target square with their
+    // least valuable attacker, each side free to stop when that is better for it. Works on
+    // bitboards only; no moves are made. Pins are ignored.
+    public int see(int move) {
+        int from = from(move);
+        int to = to(move);
+        int[] gain = seeGain;
+        long occ = occupied & ~(1L << from);
+        long attackers = attackersTo(to, occ);
+        int lastValue = SEE_VALUE[type(squares[from])];
+        boolean white = !whiteToMove;
+        gain[0] = SEE_VALUE[type(squares[to])];
+        int d = 0;
+        while (true) {
+            // Find the least valuable attacker of the side to recapture.
+            int best = -1;
+            int bestValue = Integer.MAX_VALUE;
+            for (long bits = attackers; bits != 0; bits &= bits - 1) {
+                int sq = Long.numberOfTrailingZeros(bits);
+                int piece = squares[sq];
+                if (isWhite(piece) == white && SEE_VALUE[type(piece)] < bestValue) {
+                    best = sq;
+                    bestValue = SEE_VALUE[type(piece)];
+                }
+            }
+            if (best < 0) break;
+            long nextOcc = occ & ~(1L << best);
+            long nextAttackers = attackersTo(to, nextOcc);
+            // The king may only recapture if nothing can take it back.
+            if (type(squares[best]) == KING && hasColour(nextAttackers, !white)) break;
+            d++;
+            gain[d] = lastValue - gain[d - 1];
+            lastValue = bestValue;
+            occ = nextOcc;
+            attackers = nextAttackers;
+            white = !white;
+        }
+        while (d > 0) {
+            gain[d - 1] = -Math.max(-gain[d - 1], gain[d]);
+            d--;
+        }
+        return gain[0];
+    }
+
+    private boolean hasColour(long bits, boolean white) {
+        for (; bits != 0; bits &= bits - 1) {
+            if (isWhite(squares[Long.numberOfTrailingZeros(bits)]) == white) return true;
+        }
+        return false;
+    }
+
+    public boolean inCheck() {
+        return isAttacked(kingSquare[whiteToMove ? 0 : 1], !whiteToMove);
+    }
+
+    // Fills moves with every pseudo-legal move for the side to move (moves that follow the piece
+    // rules but may leave the own king in check) and returns how many there are.
+    public int generateMoves(int[] moves) {
+        int n = 0;
+        int own = whiteToMove ? 0 : BLACK;
+        for (int from = 0; from < 64; from++) {
+            int piece = squares[from];
+            if (piece == EMPTY || (piece & BLACK) != own) continue;
+            switch (type(piece)) {
+                case PAWN:
+                    n = pawnMoves(from, moves, n);
+                    break;
+                case KNIGHT:
+                    n = jumpMoves(from, KNIGHT_TARGETS[from], own, moves, n);
+                    break;
+                case KING:
+                    n = jumpMoves(from, KING_TARGETS[from], own, moves, n);
+                    break;
+                case BISHOP:
+                    n = slideMoves(from, 4, 8, 8, own, moves, n);
+                    break;
+                case ROOK:
+                    n = slideMoves(from, 0, 4, ROOK_RANGE, own, moves, n);
+                    break;
+                case QUEEN:
+                    n = slideMoves(from, 0, 8, 8, own, moves, n);
+                    break;
+            }
+        }
+        return n;
+    }
+
+    private int pawnMoves(int from, int[] moves, int n) {
+        int row = from >> 3;
+        int col = from & 7;
+        boolean white = whiteToMove;
+        int step = white ? -1 : 1;
+        int next = row + step;
+        // No promotion in this game: a pawn on the far row is stuck.
+        if (next < 0 || next > 7) return n;
+        int ahead = next * 8 + col;
+        if (squares[ahead] == EMPTY) {
+            moves[n++] = move(from, ahead);
+            if (row == (white ? 6 : 1) && squares[ahead + step * 8] == EMPTY) {
+                moves[n++] = move(from, ahead + step * 8);
+            }
+        }
+        if (col > 0 && isEnemy(squares[ahead - 1])) moves[n++] = move(from, ahead - 1);
+        if (col < 7 && isEnemy(squares[ahead + 1])) moves[n++] = move(from, ahead + 1);
+        return n;
+    }
+
+    private boolean isEnemy(int piece) {
+        return piece != EMPTY && isWhite(piece) != whiteToMove;
+    }
+
+    private int jumpMoves(int from, int[] targets, int own, int[] moves, int n) {
+        for (int to : targets) {
+            int p = squares[to];
+            if (p == EMPTY || (p & BLACK) != own) moves[n++] = move(from, to);
+        }
+        return n;
+    }
+
+    private int slideMoves(int from, int firstDir, int lastDir, int range, int own, int[] moves, int n) {
+        int[][] rays = RAYS[from];
+        for (int dir = firstDir; dir < lastDir; dir++) {
+            int[] ray = rays[dir];
+            int len = Math.min(range, ray.length);
+            for (int i = 0; i < len; i++) {
+                int to = ray[i];
+                int p = squares[to];
+                if (p == EMPTY) {
+                    moves[n++] = move(from, to);
+                } else {
+                    if ((p & BLACK) != own) moves[n++] = move(from, to);
+                    break;
+                }
+            }
+        }
+        return n;
+    }
+
+    // Pre-condition: move is pseudo-legal for the side to move.
+    // Post-condition: returns true if making it would not leave the mover's own king in check.
+    // The position is unchanged afterwards.
+    public boolean isLegal(int move) {
+        int from = from(move);
+        int to = to(move);
+        int piece = squares[from];
+        int captured = squares[to];
+        squares[to] = piece;
+        squares[from] = EMPTY;
+        int king = type(piece) == KING ? to : kingSquare[whiteToMove ? 0 : 1];
+        boolean legal = !isAttacked(king, !whiteToMove);
+        squares[from] = piece;
+        squares[to] = captured;
+        return legal;
+    }
+
+    // Fills moves with every legal move for the side to move and returns how many there are.
+    public int generateLegalMoves(int[] moves) {
+        int n = generateMoves(moves);
+        int legal = 0;
+        for (int i = 0; i < n; i++) {
+            if (isLegal(moves[i])) moves[legal++] = moves[i];
+        }
+        return legal;
+    }
+
+    // Returns true as soon as one legal move is found, without building the move list. This is
+    // what the game-over checks use after every move, so it tries the king first (usually the
+    // only piece that matters when in check) and then walks the other pieces in board order.
+    public boolean hasLegalMove() {
+        int own = whiteToMove ? 0 : BLACK;
+        int king = kingSquare[whiteToMove ? 0 : 1];
+        for (int to : KING_TARGETS[king]) {
+            int p = squares[to];
+            if ((p == EMPTY || (p & BLACK) != own) && isLegal(move(king, to))) return true;
+        }
+        int[] buffer = scratch;
+        for (int from = 0; from < 64; from++) {
+            int piece = squares[from];
+            if (piece == EMPTY || (piece & BLACK) != own || from == king) continue;
+            int n;
+            switch (type(piece)) {
+                case PAWN:
+                    n = pawnMoves(from, buffer, 0);
+                    break;
+                case KNIGHT:
+                    n = jumpMoves(from, KNIGHT_TARGETS[from], own, buffer, 0);
+                    break;
+                case BISHOP:
+                    n = slideMoves(from, 4, 8, 8, own, buffer, 0);
+                    break;
+                case ROOK:
+                    n = slideMoves(from, 0, 4, ROOK_RANGE, own, buffer, 0);
+                    break;
+                default:
+                    n = slideMoves(from, 0, 8, 8, own, buffer, 0);
+                    break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (isLegal(buffer[i])) return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isCheckmate() {
+        return inCheck() && !hasLegalMove();
+    }
+
+    public boolean isStalemate() {
+        return !inCheck() && !hasLegalMove();
+    }
+}
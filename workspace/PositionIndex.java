@@ -0,0 +1,362 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Opening explorer over a GameArchive: for every position reached in the first plies of the stored
+// games, which moves were played from it and how those games ended. Positions are identified by
+// their Zobrist key.
+//
+// The index is built in one streaming pass over the archive: (key, move, result) triples are
+// collected in fixed-size chunks, each chunk is sorted, aggregated and written as a run file, and
+// the runs are merged into the index. Queries memory-map the index and binary search it, first over
+// the first key of every BLOCK_ENTRIES block (kept in memory) and then inside one block, so a lookup
+// touches one or two pages of the file.
+//
+// File layout (big-endian): MAGIC:int  entryCount:long  maxPly:int  entries  fence keys, where an
+// entry is key:long move:short pad:short whiteWins:int draws:int blackWins:int, sorted by key and move.
+//
+// Usage: java PositionIndex build <archive> <index> [max plies]
+//        java PositionIndex query <index> [fen]
+public class PositionIndex {
+    static final int MAGIC = 0x43485049;
+    static final int HEADER = 16;
+    static final int ENTRY = 24;
+    static final int BLOCK_ENTRIES = 4096 / ENTRY;
+    static final int DEFAULT_MAX_PLY = 40;
+    static final int CHUNK = 1 << 22;
+    // Entries per mapped segment, so that files over 2GB can be mapped.
+    static final long SEGMENT_ENTRIES = (1L << 30) / ENTRY;
+
+    // What was played from a position and how it scored.
+    public static class Stats {
+        public final int move;
+        public final int whiteWins;
+        public final int draws;
+        public final int blackWins;
+
+        Stats(int move, int whiteWins, int draws, int blackWins) {
+            this.move = move;
+            this.whiteWins = whiteWins;
+            this.draws = draws;
+            this.blackWins = blackWins;
+        }
+
+        public int games() {
+            return whiteWins + draws + blackWins;
+        }
+    }
+
+    private final FileChannel channel;
+    private final long count;
+    private final int maxPly;
+    private final MappedByteBuffer[] segments;
+    private final long[] fences;
+
+    private PositionIndex(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC) throw new IOException("not a position index");
+        count = header.getLong();
+        maxPly = header.getInt();
+        int segmentCount = (int) ((count + SEGMENT_ENTRIES - 1) / SEGMENT_ENTRIES);
+        segments = new MappedByteBuffer[segmentCount];
+        for (int s = 0; s < segmentCount; s++) {
+            long first = s * SEGMENT_ENTRIES;
+            long entries = Math.min(SEGMENT_ENTRIES, count - first);
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER + first * ENTRY, entries * ENTRY);
+        }
+        fences = new long[(int) ((count + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES)];
+        ByteBuffer footer = ByteBuffer.allocate(fences.length * 8);
+        long at = HEADER + count * ENTRY;
+        while (footer.hasRemaining()) {
+            if (channel.read(footer, at + footer.position()) < 0) throw new EOFException("truncated index");
+        }
+        footer.flip();
+        footer.asLongBuffer().get(fences);
+    }
+
+    public static PositionIndex open(Path path) throws IOException {
+        return new PositionIndex(path);
+    }
+
+    public long getEntryCount() {
+        return count;
+    }
+
+    // Positions deeper than this many plies into a game are not indexed.
+    public int getMaxPly() {
+        return maxPly;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long keyAt(long i) {
+        return segments[(int) (i / SEGMENT_ENTRIES)].getLong((int) (i % SEGMENT_ENTRIES) * ENTRY);
+    }
+
+    // The moves played from the position with the given key, most played first.
+    public List<Stats> lookup(long key) {
+        List<Stats> result = new ArrayList<Stats>();
+        if (count == 0) return result;
+        // The last block whose first key is below key holds the first match, or the next block does.
+        int lo = 0;
+        int hi = fences.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (fences[mid] < key) lo = mid;
+            else hi = mid - 1;
+        }
+        long first = (long) lo * BLOCK_ENTRIES;
+        long last = Math.min(count, first + 2L * BLOCK_ENTRIES);
+        while (first < last) {
+            long mid = (first + last) >>> 1;
+            if (keyAt(mid) < key) first = mid + 1;
+            else last = mid;
+        }
+        for (long i = first; i < count && keyAt(i) == key; i++) {
+            ByteBuffer seg = segments[(int) (i / SEGMENT_ENTRIES)];
+            int at = (int) (i % SEGMENT_ENTRIES) * ENTRY;
+            result.add(new Stats(seg.getShort(at + 8), seg.getInt(at + 12), seg.getInt(at + 16), seg.getInt(at + 20)));
+        }
+        Collections.sort(result, new Comparator<Stats>() {
+            public int compare(Stats a, Stats b) {
+                return b.games() - a.games();
+            }
+        });
+        return result;
+    }
+
+    public List<Stats> lookup(Position p) {
+        return lookup(p.getKey());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("build")) {
+            int maxPly = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_MAX_PLY;
+            long start = System.nanoTime();
+            long entries = build(Paths.get(args[1]), Paths.get(args[2]), maxPly);
+            System.out.printf("%d entries in %.1f s%n", entries, (System.nanoTime() - start) / 1e9);
+        } else if (args.length >= 2 && args[0].equals("query")) {
+            PositionIndex index = open(Paths.get(args[1]));
+            Position p = Position.startingPosition();
+            if (args.length > 2) {
+                StringBuilder fen = new StringBuilder();
+                for (int i = 2; i < args.length; i++) fen.append(args[i]).append(' ');
+                p = Position.fromFen(fen.toString());
+            }
+            for (Stats s : index.lookup(p)) {
+                System.out.printf("%s %8d games  %5.1f%% %5.1f%% %5.1f%%%n", Position.moveName(s.move), s.games(),
+                        100.0 * s.whiteWins / s.games(), 100.0 * s.draws / s.games(), 100.0 * s.blackWins / s.games());
+            }
+            index.close();
+        } else {
+            System.out.println("Usage: java PositionIndex build <archive> <index> [max plies]");
+            System.out.println("       java PositionIndex query <index> [fen]");
+        }
+    }
+
+    // Pre-condition: archive is a GameArchive file.
+    // Post-condition: index holds the aggregated moves of the first maxPly plies of every finished
+    // game in archive. Returns the number of entries.
+    public static long build(Path archive, Path index, int maxPly) throws IOException {
+        List<Path> runs = new ArrayList<Path>();
+        long[] keys = new long[CHUNK];
+        int[] infos = new int[CHUNK];
+        int n = 0;
+        GameArchive codec = new GameArchive();
+        GameArchive.Reader reader = new GameArchive.Reader(Files.newInputStream(archive));
+        try {
+            byte[] raw;
+            while ((raw = reader.nextRaw()) != null) {
+                GameRecord r = codec.decode(raw, maxPly);
+                int result = GameArchive.resultCode(r.result);
+                if (result == 0) continue;
+                if (n + r.moves.length > CHUNK) {
+                    runs.add(writeRun(keys, infos, n, index));
+                    n = 0;
+                }
+                Position p = r.startPosition();
+                for (int move : r.moves) {
+                    keys[n] = p.getKey();
+                    infos[n++] = move | result << 12;
+                    p.makeMove(move);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (n > 0 || runs.isEmpty()) runs.add(writeRun(keys, infos, n, index));
+        try {
+            return merge(runs, index, maxPly);
+        } finally {
+            for (Path run : runs) Files.deleteIfExists(run);
+        }
+    }
+
+    // Sorts and aggregates one chunk into a temporary run file of entries.
+    private static Path writeRun(long[] keys, int[] infos, int n, Path index) throws IOException {
+        sort(keys, infos, 0, n - 1);
+        Path run = Files.createTempFile(index.toAbsolutePath().getParent(), "run", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            int i = 0;
+            while (i < n) {
+                long key = keys[i];
+                int move = infos[i] & 0xFFF;
+                int[] counts = new int[4];
+                while (i < n && keys[i] == key && (infos[i] & 0xFFF) == move) counts[infos[i++] >>> 12]++;
+                writeEntry(out, key, move, counts[1], counts[3], counts[2]);
+            }
+        }
+        return run;
+    }
+
+    private static void writeEntry(DataOutputStream out, long key, int move, int white, int draws, int black)
+            throws IOException {
+        out.writeLong(key);
+        out.writeShort(move);
+        out.writeShort(0);
+        out.writeInt(white);
+        out.writeInt(draws);
+        out.writeInt(black);
+    }
+
+    // Quicksort of keys[lo..hi] by key, then move, carrying infos along.
+    private static void sort(long[] keys, int[] infos, int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            long pk = keys[mid];
+            int pm = infos[mid] & 0xFFF;
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (before(keys[i], infos[i], pk, pm)) i++;
+                while (before(pk, pm, keys[j], infos[j])) j--;
+                if (i <= j) {
+                    swap(keys, infos, i++, j--);
+                }
+            }
+            // Recurse into the smaller half, loop on the larger.
+            if (j - lo < hi - i) {
+                sort(keys, infos, lo, j);
+                lo = i;
+            } else {
+                sort(keys, infos, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && before(keys[j], infos[j], keys[j - 1], infos[j - 1]); j--) {
+                swap(keys, infos, j, j - 1);
+            }
+        }
+    }
+
+    private static boolean before(long key1, int info1, long key2, int info2) {
+        return key1 < key2 || (key1 == key2 && (info1 & 0xFFF) < (info2 & 0xFFF));
+    }
+
+    private static void swap(long[] keys, int[] infos, int a, int b) {
+        long k = keys[a];
+        keys[a] = keys[b];
+        keys[b] = k;
+        int m = infos[a];
+        infos[a] = infos[b];
+        infos[b] = m;
+    }
+
+    // One run file being merged, positioned on its current entry.
+    private static class Run {
+        final DataInputStream in;
+        long key;
+        int move;
+        int white;
+        int draws;
+        int black;
+
+        Run(Path path) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+        }
+
+        boolean advance() throws IOException {
+            try {
+                key = in.readLong();
+                move = in.readShort();
+                in.readShort();
+                white = in.readInt();
+                draws = in.readInt();
+                black = in.readInt();
+                return true;
+            } catch (EOFException e) {
+                in.close();
+                return false;
+            }
+        }
+    }
+
+    // Merges the runs into the index file, adding up entries for the same key and move.
+    private static long merge(List<Path> paths, Path index, int maxPly) throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>(Math.max(1, paths.size()), new Comparator<Run>() {
+            public int compare(Run a, Run b) {
+                if (a.key != b.key) return a.key < b.key ? -1 : 1;
+                return a.move - b.move;
+            }
+        });
+        for (Path path : paths) {
+            Run run = new Run(path);
+            if (run.advance()) queue.add(run);
+        }
+        long count = 0;
+        List<Long> fences = new ArrayList<Long>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(index), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeLong(0);
+            out.writeInt(maxPly);
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                long key = run.key;
+                int move = run.move;
+                int white = 0;
+                int draws = 0;
+                int black = 0;
+                while (true) {
+                    white += run.white;
+                    draws += run.draws;
+                    black += run.black;
+                    if (run.advance()) queue.add(run);
+                    Run next = queue.peek();
+                    if (next == null || next.key != key || next.move != move) break;
+                    run = queue.poll();
+                }
+                if (count % BLOCK_ENTRIES == 0) fences.add(key);
+                writeEntry(out, key, move, white, draws, black);
+                count++;
+            }
+            for (long fence : fences) out.writeLong(fence);
+        }
+        try (FileChannel ch = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(8);
+            b.putLong(count).flip();
+            ch.write(b, 4);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,307 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Finds tactical puzzles in stored games: positions where the side to move has exactly one move
+// that wins. Works as a pipeline of stages joined by small bounded queues, so a stage that falls
+// behind blocks the ones feeding it and memory stays flat however large the input is:
+//
+//   parse   reads game records from a GameArchive (or games from a PGN file)
+//   replay  plays each game through on a Position and passes on every position after the opening
+//   filter  a shallow two-line search keeps positions whose best move is far ahead of the next
+//   verify  a deeper three-line search confirms that the best move wins and no other move does
+//
+// and the puzzles are written out as EPD ("bm" with the winning move, "id" naming the game and
+// ply), so EpdSuite can run them. Moves are replayed and checked by Position, the same rules the
+// GUI's Board plays by.
+//
+// Usage: java PuzzleMiner <games.chga | games.pgn> <out.epd> [-threads n] [-filter depth]
+//                         [-verify depth] [-from ply]
+public class PuzzleMiner {
+    // A winning move scores at least WIN; every other move at most SECOND_BEST.
+    static final int WIN = 200;
+    static final int SECOND_BEST = 50;
+    // The shallow filter lets a little more through, since scores move with depth.
+    static final int FILTER_SLACK = 50;
+    static final int QUEUE_CAPACITY = 64;
+    static final int HASH_MEGABYTES = 8;
+
+    // Ends a queue; every stage thread passes it on once its input is exhausted.
+    private static final Object END = new Object();
+
+    // A position to examine, with where it came from.
+    static class Candidate {
+        final long game;
+        final int ply;
+        final String fen;
+
+        Candidate(long game, int ply, String fen) {
+            this.game = game;
+            this.ply = ply;
+            this.fen = fen;
+        }
+    }
+
+    // What one thread of a stage does with each item it takes; out is the next stage's queue.
+    private interface Step {
+        void process(Object item, BlockingQueue<Object> out) throws InterruptedException;
+    }
+
+    // Creates the Step, with its own state, for each thread of a stage.
+    private interface StepFactory {
+        Step create();
+    }
+
+    private final int filterDepth;
+    private final int verifyDepth;
+    private final int fromPly;
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong positions = new AtomicLong();
+    private final AtomicLong candidates = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    // Keys of positions already passed to verify, so a position reached in many games is only
+    // searched deeply once. Grows with the candidates, not the input.
+    private final Set<Long> seen = ConcurrentHashMap.newKeySet();
+
+    public PuzzleMiner(int filterDepth, int verifyDepth, int fromPly) {
+        this.filterDepth = filterDepth;
+        this.verifyDepth = verifyDepth;
+        this.fromPly = fromPly;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: java PuzzleMiner <games.chga | games.pgn> <out.epd> [-threads n] "
+                    + "[-filter depth] [-verify depth] [-from ply]");
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        int filter = 4;
+        int verify = 8;
+        int from = 12;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("-threads")) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-filter")) filter = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-verify")) verify = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-from")) from = Integer.parseInt(args[++i]);
+        }
+        long start = System.nanoTime();
+        PuzzleMiner miner = new PuzzleMiner(filter, verify, from);
+        long puzzles = miner.run(Paths.get(args[0]), Paths.get(args[1]), threads);
+        System.out.printf("%d games, %d positions, %d candidates, %d puzzles, %d bad games in %.1f s%n",
+                miner.games.get(), miner.positions.get(), miner.candidates.get(), puzzles, miner.errors.get(),
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    // Runs the pipeline over input, writing the puzzles to output, and returns how many there were.
+    public long run(final Path input, Path output, int threads) throws IOException, InterruptedException {
+        final BlockingQueue<Object> records = new ArrayBlockingQueue<Object>(QUEUE_CAPACITY);
+        BlockingQueue<Object> positionQueue = new ArrayBlockingQueue<Object>(QUEUE_CAPACITY);
+        BlockingQueue<Object> candidateQueue = new ArrayBlockingQueue<Object>(QUEUE_CAPACITY);
+        BlockingQueue<Object> puzzleQueue = new ArrayBlockingQueue<Object>(QUEUE_CAPACITY);
+        final boolean pgn = input.toString().toLowerCase().endsWith(".pgn");
+
+        Thread parser = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    try {
+                        parse(input, pgn, records);
+                    } finally {
+                        records.put(END);
+                    }
+                } catch (IOException e) {
+                    System.out.println("Cannot read " + input + ": " + e.getMessage());
+                } catch (InterruptedException e) {
+                    // Shutting down.
+                }
+            }
+        }, "puzzle-parse");
+        parser.setDaemon(true);
+        parser.start();
+
+        // Replaying is cheap next to searching, so it gets fewer threads.
+        startStage("puzzle-replay", Math.max(1, threads / 4), records, positionQueue, new StepFactory() {
+            public Step create() {
+                return new Step() {
+                    final GameArchive archive = new GameArchive();
+
+                    public void process(Object item, BlockingQueue<Object> out) throws InterruptedException {
+                        replay(item, archive, out);
+                    }
+                };
+            }
+        });
+        startStage("puzzle-filter", threads, positionQueue, candidateQueue, new StepFactory() {
+            public Step create() {
+                return new Searcher(filterDepth, 2, WIN - FILTER_SLACK, SECOND_BEST + FILTER_SLACK, true);
+            }
+        });
+        startStage("puzzle-verify", threads, candidateQueue, puzzleQueue, new StepFactory() {
+            public Step create() {
+                return new Searcher(verifyDepth, 3, WIN, SECOND_BEST, false);
+            }
+        });
+
+        long puzzles = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            Object item;
+            while ((item = puzzleQueue.take()) != END) {
+                out.write((String) item);
+                out.newLine();
+                puzzles++;
+            }
+        }
+        return puzzles;
+    }
+
+    // Starts threads threads that take items from in until END and hand them to their Step; the
+    // last thread to finish passes END on to out.
+    private void startStage(String name, int threads, final BlockingQueue<Object> in,
+            final BlockingQueue<Object> out, final StepFactory factory) {
+        final AtomicInteger running = new AtomicInteger(threads);
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    Step step = factory.create();
+                    try {
+                        Object item;
+                        while ((item = in.take()) != END) {
+                            try {
+                                step.process(item, out);
+                            } catch (RuntimeException e) {
+                                // A corrupt record or an illegal move spoils one game, not the run.
+                                errors.incrementAndGet();
+                            }
+                        }
+                        // Leave END for the other threads of this stage.
+                        in.put(END);
+                        if (running.decrementAndGet() == 0) out.put(END);
+                    } catch (InterruptedException e) {
+                        // Shutting down.
+                    }
+                }
+            }, name + "-" + t);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    // Puts every game of input on records: encoded archive records, or PGN games.
+    private static void parse(Path input, boolean pgn, BlockingQueue<Object> records)
+            throws IOException, InterruptedException {
+        if (pgn) {
+            try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+                PgnReader reader = new PgnReader(in);
+                PgnReader.Game game;
+                while ((game = reader.next()) != null) records.put(game);
+            }
+        } else {
+            try (InputStream in = Files.newInputStream(input)) {
+                GameArchive.Reader reader = new GameArchive.Reader(in);
+                byte[] raw;
+                while ((raw = reader.nextRaw()) != null) records.put(raw);
+            }
+        }
+    }
+
+    // Plays one game through and puts each position from fromPly on, with a move to make, on out.
+    private void replay(Object record, GameArchive archive, BlockingQueue<Object> out) throws InterruptedException {
+        long game = games.incrementAndGet();
+        Position p;
+        int[] moves;
+        if (record instanceof PgnReader.Game) {
+            PgnReader.Game g = (PgnReader.Game) record;
+            p = g.startPosition();
+            moves = new int[g.moves.size()];
+            for (int i = 0; i < moves.length; i++) {
+                moves[i] = San.parse(p, g.moves.get(i));
+                if (moves[i] == Position.NO_MOVE) throw new IllegalArgumentException("illegal move " + g.moves.get(i));
+                p.makeMove(moves[i]);
+            }
+            p = g.startPosition();
+        } else {
+            GameRecord r = archive.decode((byte[]) record);
+            p = r.startPosition();
+            moves = r.moves;
+        }
+        for (int ply = 0; ply <= moves.length; ply++) {
+            if (ply >= fromPly && p.hasLegalMove()) {
+                positions.incrementAndGet();
+                out.put(new Candidate(game, ply, p.toFen()));
+            }
+            if (ply < moves.length) p.makeMove(moves[ply]);
+        }
+    }
+
+    // Filter and verify: a multi-PV search of each position, passing on the ones where the best
+    // line wins and the next best does not. The filter passes on the Candidate; verify passes on
+    // the finished EPD line.
+    private class Searcher implements Step {
+        final int depth;
+        final int lines;
+        final int win;
+        final int secondBest;
+        final boolean filter;
+        final TranspositionTable tt = TranspositionTable.withMegabytes(HASH_MEGABYTES);
+        final ClassicalEvaluator evaluator = new ClassicalEvaluator();
+        final SearchOptions options = new SearchOptions();
+
+        Searcher(int depth, int lines, int win, int secondBest, boolean filter) {
+            this.depth = depth;
+            this.lines = lines;
+            this.win = win;
+            this.secondBest = secondBest;
+            this.filter = filter;
+        }
+
+        public void process(Object item, BlockingQueue<Object> out) throws InterruptedException {
+            Candidate c = (Candidate) item;
+            Position p = Position.fromFen(c.fen);
+            p.setEvaluator(evaluator);
+            if (filter && seen.contains(p.getKey())) return;
+            Search search = new Search(p, tt, options);
+            search.setMultiPv(lines);
+            search.search(depth);
+            // A position with a single legal move is no puzzle.
+            if (search.getLineCount() < 2) return;
+            if (search.getLineScore(0) < win || search.getLineScore(1) > secondBest) return;
+            if (filter) {
+                if (!seen.add(p.getKey())) return;
+                candidates.incrementAndGet();
+                out.put(c);
+                return;
+            }
+            int[] line = search.getLine(0);
+            StringBuilder epd = new StringBuilder(c.fen.substring(0, nthSpace(c.fen, 4)));
+            epd.append(" bm ").append(San.format(p, line[0])).append("; id \"game ").append(c.game)
+                    .append(" ply ").append(c.ply).append("\"; ce ").append(search.getLineScore(0)).append("; pv");
+            for (int move : line) {
+                epd.append(' ').append(San.format(p, move));
+                p.makeMove(move);
+            }
+            epd.append(';');
+            out.put(epd.toString());
+        }
+    }
+
+    // The index of the n-th space in s, or its length if there are fewer.
+    private static int nthSpace(String s, int n) {
+        int i = -1;
+        for (int k = 0; k < n; k++) {
+            i = s.indexOf(' ', i + 1);
+            if (i < 0) return s.length();
+        }
+        return i;
+    }
+}
@@ -0,0 +1,82 @@
+import java.io.ByteArrayOutputStream;
+
+// Arithmetic (range) coder over 32-bit ranges with carry propagation, after the coder in LZMA.
+// Symbols are coded from their cumulative frequency, frequency and the total; the model that
+// supplies those counts is up to the caller, who must present the same counts when decoding.
+// Pre-condition for every symbol: 0 < freq, cum + freq <= total <= 1 << 16.
+public class RangeCoder {
+    private static final long TOP = 1L << 24;
+    private static final long MASK = 0xFFFFFFFFL;
+
+    public static class Encoder {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private long low;
+        private long range = MASK;
+        private int cache;
+        private long cacheSize = 1;
+
+        public void encode(int cum, int freq, int total) {
+            range /= total;
+            low += cum * range;
+            range *= freq;
+            while (range < TOP) {
+                range <<= 8;
+                shiftLow();
+            }
+        }
+
+        private void shiftLow() {
+            if (low < 0xFF000000L || low > MASK) {
+                int carry = (int) (low >>> 32);
+                int temp = cache;
+                do {
+                    out.write(temp + carry);
+                    temp = 0xFF;
+                } while (--cacheSize != 0);
+                cache = (int) (low >>> 24) & 0xFF;
+            }
+            cacheSize++;
+            low = (low & 0x00FFFFFFL) << 8;
+        }
+
+        // Flushes the coder and returns everything coded.
+        public byte[] finish() {
+            for (int i = 0; i < 5; i++) shiftLow();
+            return out.toByteArray();
+        }
+    }
+
+    public static class Decoder {
+        private final byte[] in;
+        private int pos;
+        private long range = MASK;
+        private long code;
+
+        // Decodes in[offset..]; reading past the end supplies zeros.
+        public Decoder(byte[] in, int offset) {
+            this.in = in;
+            this.pos = offset;
+            for (int i = 0; i < 5; i++) code = ((code << 8) | next()) & MASK;
+        }
+
+        private int next() {
+            return pos < in.length ? in[pos++] & 0xFF : 0;
+        }
+
+        // Returns the cumulative count of the next symbol; follow with decode for that symbol.
+        public int frequency(int total) {
+            range /= total;
+            long value = code / range;
+            return (int) Math.min(value, total - 1);
+        }
+
+        public void decode(int cum, int freq) {
+            code -= cum * range;
+            range *= freq;
+            while (range < TOP) {
+                code = ((code << 8) | next()) & MASK;
+                range <<= 8;
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+// Standard algebraic notation (Nf3, exd5, Rac1+, Qh7#) for this game's moves. There is no castling
+// or promotion here, so O-O and e8=Q never name a legal move.
+public class San {
+    private static final String PIECES = " PNBRQK";
+
+    // Pre-condition: move is legal in p.
+    public static String format(Position p, int move) {
+        int from = Position.from(move);
+        int to = Position.to(move);
+        int type = Position.type(p.pieceAt(from));
+        boolean capture = p.pieceAt(to) != Position.EMPTY;
+        StringBuilder sb = new StringBuilder();
+        if (type == Position.PAWN) {
+            if (capture) sb.append(Position.squareName(from).charAt(0));
+        } else {
+            sb.append(PIECES.charAt(type));
+            // Disambiguate against other pieces of the same kind that can reach the same square.
+            int[] moves = new int[Position.MAX_MOVES];
+            int n = p.generateLegalMoves(moves);
+            boolean clash = false;
+            boolean sameFile = false;
+            boolean sameRank = false;
+            for (int i = 0; i < n; i++) {
+                int other = Position.from(moves[i]);
+                if (other == from || Position.to(moves[i]) != to || p.pieceAt(other) != p.pieceAt(from)) continue;
+                clash = true;
+                if ((other & 7) == (from & 7)) sameFile = true;
+                if ((other >> 3) == (from >> 3)) sameRank = true;
+            }
+            String name = Position.squareName(from);
+            if (clash) {
+                if (!sameFile) sb.append(name.charAt(0));
+                else if (!sameRank) sb.append(name.charAt(1));
+                else sb.append(name);
+            }
+        }
+        if (capture) sb.append('x');
+        sb.append(Position.squareName(to));
+        p.makeMove(move);
+        if (p.inCheck()) sb.append(p.hasLegalMove() ? '+' : '#');
+        p.unmakeMove(move);
+        return sb.toString();
+    }
+
+    // Returns the legal move of p written as san (or in coordinate notation), or Position.NO_MOVE
+    // if it names no legal move or more than one.
+    public static int parse(Position p, String san) {
+        String s = san;
+        while (!s.isEmpty() && "+#!?".indexOf(s.charAt(s.length() - 1)) >= 0) s = s.substring(0, s.length() - 1);
+        // Coordinate notation ("e2e4"); a piece letter in front ("R1a3") makes it SAN.
+        if (s.length() == 4 && s.charAt(0) >= 'a' && s.charAt(0) <= 'h' && s.charAt(2) >= 'a' && s.charAt(2) <= 'h') {
+            int move = p.parseMove(s);
+            if (move != Position.NO_MOVE) return move;
+        }
+        if (s.length() < 2 || s.indexOf('=') >= 0) return Position.NO_MOVE;
+        int type = Position.PAWN;
+        int i = 0;
+        if ("NBRQK".indexOf(s.charAt(0)) >= 0) type = PIECES.indexOf(s.charAt(i++));
+        char file = s.charAt(s.length() - 2);
+        char rank = s.charAt(s.length() - 1);
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') return Position.NO_MOVE;
+        int to = Position.square('8' - rank, file - 'a');
+        int fromFile = -1;
+        int fromRank = -1;
+        for (; i < s.length() - 2; i++) {
+            char c = s.charAt(i);
+            if (c >= 'a' && c <= 'h') fromFile = c - 'a';
+            else if (c >= '1' && c <= '8') fromRank = '8' - c;
+            else if (c != 'x' && c != '-') return Position.NO_MOVE;
+        }
+
+        int[] moves = new int[Position.MAX_MOVES];
+        int n = p.generateLegalMoves(moves);
+        int found = Position.NO_MOVE;
+        for (int k = 0; k < n; k++) {
+            int from = Position.from(moves[k]);
+            if (Position.to(moves[k]) != to || Position.type(p.pieceAt(from)) != type) continue;
+            if (fromFile >= 0 && (from & 7) != fromFile) continue;
+            if (fromRank >= 0 && (from >> 3) != fromRank) continue;
+            if (found != Position.NO_MOVE) return Position.NO_MOVE;
+            found = moves[k];
+        }
+        return found;
+    }
+}
@@ -0,0 +1,501 @@
+// The engine's search: iterative deepening over a principal variation alpha-beta search, with a
+// transposition table, killer moves and history scores for move ordering, a check extension and a
+// quiescence search over captures. On top of that come the selective parts, each of which can be
+// switched off through SearchOptions: aspiration windows at the root, null-move pruning, late move
+// reductions, futility pruning and razoring near the leaves, and skipping losing captures (by static
+// exchange evaluation) in the quiescence search.
+//
+// With setMultiPv(n) every iteration searches the n best root moves one after another, each time
+// leaving out the moves of the lines already found, and keeps a principal variation and score for
+// each (read with getLine and getLineScore, e.g. from the listener).
+//
+// A Search works on one Position, making and unmaking moves in place; it is not thread-safe, but
+// stop() may be called from any thread.
+public class Search {
+    public static final int INFINITE = 32000;
+    public static final int MATE = 30000;
+    // Scores at least this far from zero are forced mates.
+    public static final int MATE_BOUND = MATE - 1000;
+    public static final int MAX_PLY = 100;
+
+    private static final int[] FUTILITY_MARGIN = {0, 150, 300};
+    private static final int RAZOR_MARGIN = 300;
+    private static final int ASPIRATION_WINDOW = 30;
+    private static final int HISTORY_MAX = 1 << 14;
+
+    // Move ordering bands: hash move, winning or even captures, killers, quiet moves by history
+    // score, losing captures.
+    private static final int TT_MOVE_SCORE = 1 << 30;
+    private static final int GOOD_CAPTURE_SCORE = 1 << 28;
+    private static final int KILLER_SCORE = 1 << 27;
+    private static final int BAD_CAPTURE_SCORE = -(1 << 28);
+
+    private final Position pos;
+    private final TranspositionTable tt;
+    private final SearchOptions options;
+
+    // Per-ply move lists and ordering scores, allocated once.
+    private final int[][] moves = new int[MAX_PLY + 1][Position.MAX_MOVES];
+    private final int[][] scores = new int[MAX_PLY + 1][Position.MAX_MOVES];
+    private final int[][] killers = new int[MAX_PLY + 1][2];
+    // history[piece][to]: how often a quiet move of that piece to that square caused a cutoff.
+    private final int[][] history = new int[16][64];
+    // Triangular principal variation table: pv[ply][ply..pvLength[ply]-1].
+    private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+
+    private SearchListener listener;
+    private TimeManager timeManager;
+    private long nodeLimit = Long.MAX_VALUE;
+    private volatile boolean stopped;
+    // Set once the search has to unwind; every score computed after that is meaningless.
+    private boolean aborted;
+    private long nodes;
+
+    private int bestMove;
+    private int bestScore;
+    private int completedDepth;
+    private final int[] bestPv = new int[MAX_PLY + 1];
+    private int bestPvLength;
+
+    // Multi-PV: the lines of the last completed iteration, best first, and those of the iteration
+    // in progress. The root skips the first move of the first excludedLines pending lines.
+    private int multiPv = 1;
+    private int lineCount;
+    private int[][] linePv = new int[1][MAX_PLY + 1];
+    private int[] lineLength = new int[1];
+    private int[] lineScore = new int[1];
+    private int[][] pendingPv = new int[1][MAX_PLY + 1];
+    private int[] pendingLength = new int[1];
+    private int[] pendingScore = new int[1];
+    private int excludedLines;
+
+    public Search(Position pos, TranspositionTable tt, SearchOptions options) {
+        this.pos = pos;
+        this.tt = tt;
+        this.options = options;
+        if (pos.getEvaluator() == null) pos.setEvaluator(new ClassicalEvaluator());
+    }
+
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    // Limits the next searches by time; null searches without a time limit.
+    public void setTimeManager(TimeManager timeManager) {
+        this.timeManager = timeManager;
+    }
+
+    // Pre-condition: lines >= 1 and no search is running.
+    // Post-condition: later searches find the best lines root moves, not just the best one.
+    public void setMultiPv(int lines) {
+        multiPv = lines;
+        lineCount = 0;
+        linePv = new int[lines][MAX_PLY + 1];
+        lineLength = new int[lines];
+        lineScore = new int[lines];
+        pendingPv = new int[lines][MAX_PLY + 1];
+        pendingLength = new int[lines];
+        pendingScore = new int[lines];
+    }
+
+    // Asks a running search to finish as soon as possible. Safe to call from another thread.
+    public void stop() {
+        stopped = true;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    public int getScore() {
+        return bestScore;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    public int[] getPrincipalVariation() {
+        return java.util.Arrays.copyOf(bestPv, bestPvLength);
+    }
+
+    // The number of lines of the last completed iteration: the multi-PV setting, or fewer if the
+    // root has fewer legal moves.
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    // Line i (0 is the best) of the last completed iteration, starting with its root move.
+    public int[] getLine(int i) {
+        return java.util.Arrays.copyOf(linePv[i], lineLength[i]);
+    }
+
+    public int getLineScore(int i) {
+        return lineScore[i];
+    }
+
+    // Pre-condition: the side to move has at least one legal move.
+    // Post-condition: searches to maxDepth (or until stopped or out of nodes) and returns the best
+    // move of the last completed iteration. The position is left unchanged.
+    public int search(int maxDepth) {
+        long start = System.nanoTime();
+        stopped = false;
+        aborted = false;
+        nodes = 0;
+        bestMove = Position.NO_MOVE;
+        bestScore = 0;
+        bestPvLength = 0;
+        completedDepth = 0;
+        lineCount = 0;
+        for (int[] row : history) {
+            for (int i = 0; i < row.length; i++) row[i] /= 2;
+        }
+        for (int[] k : killers) {
+            k[0] = Position.NO_MOVE;
+            k[1] = Position.NO_MOVE;
+        }
+
+        int lines = Math.min(multiPv, pos.generateLegalMoves(moves[0]));
+        int score = 0;
+        for (int depth = 1; depth <= Math.min(maxDepth, MAX_PLY); depth++) {
+            for (int k = 0; k < lines; k++) {
+                excludedLines = k;
+                int s = aspirationSearch(depth, k < lineCount ? lineScore[k] : score);
+                if (aborted) break;
+                pendingScore[k] = s;
+                pendingLength[k] = pvLength[0];
+                System.arraycopy(pv[0], 0, pendingPv[k], 0, pvLength[0]);
+            }
+            excludedLines = 0;
+            if (aborted) break;
+            commitLines(lines);
+            int s = lineScore[0];
+            score = s;
+            completedDepth = depth;
+            bestScore = s;
+            bestPvLength = lineLength[0];
+            System.arraycopy(linePv[0], 0, bestPv, 0, bestPvLength);
+            bestMove = bestPvLength > 0 ? bestPv[0] : Position.NO_MOVE;
+            if (listener != null) {
+                listener.iterationDone(depth, s, nodes, System.nanoTime() - start, bestPv, bestPvLength);
+            }
+            // A forced mate within the depth searched cannot get any better.
+            if (lines == 1 && Math.abs(s) >= MATE_BOUND && MATE - Math.abs(s) <= depth) break;
+            if (timeManager != null && timeManager.stopAfterIteration(bestMove, System.nanoTime())) break;
+        }
+        if (bestMove == Position.NO_MOVE) {
+            int n = pos.generateLegalMoves(moves[0]);
+            if (n > 0) bestMove = moves[0][0];
+        }
+        return bestMove;
+    }
+
+    // Makes the pending lines of a completed iteration the current ones, best score first.
+    private void commitLines(int lines) {
+        for (int k = 0; k < lines; k++) {
+            int j = k;
+            while (j > 0 && lineScore[j - 1] < pendingScore[k]) {
+                lineScore[j] = lineScore[j - 1];
+                lineLength[j] = lineLength[j - 1];
+                int[] swap = linePv[j];
+                linePv[j] = linePv[j - 1];
+                linePv[j - 1] = swap;
+                j--;
+            }
+            lineScore[j] = pendingScore[k];
+            lineLength[j] = pendingLength[k];
+            System.arraycopy(pendingPv[k], 0, linePv[j], 0, pendingLength[k]);
+        }
+        lineCount = lines;
+    }
+
+    // True if move starts one of the lines already found in this iteration.
+    private boolean isExcluded(int move) {
+        for (int k = 0; k < excludedLines; k++) {
+            if (pendingLength[k] > 0 && pendingPv[k][0] == move) return true;
+        }
+        return false;
+    }
+
+    // Searches the root with a narrow window around the previous iteration's score, widening it
+    // whenever the true score falls outside.
+    private int aspirationSearch(int depth, int previous) {
+        if (!options.aspiration || depth < 4) {
+            return alphaBeta(depth, 0, -INFINITE, INFINITE, true);
+        }
+        int delta = ASPIRATION_WINDOW;
+        int alpha = Math.max(-INFINITE, previous - delta);
+        int beta = Math.min(INFINITE, previous + delta);
+        while (true) {
+            int s = alphaBeta(depth, 0, alpha, beta, true);
+            if (aborted) return s;
+            if (s <= alpha && alpha > -INFINITE) {
+                if (timeManager != null) timeManager.failedLow();
+                alpha = Math.max(-INFINITE, s - delta);
+            } else if (s >= beta && beta < INFINITE) {
+                beta = Math.min(INFINITE, s + delta);
+            } else {
+                return s;
+            }
+            delta *= 2;
+        }
+    }
+
+    // The clock is only read every 1024 nodes; the other checks are plain field reads.
+    private boolean checkAbort() {
+        if (!aborted && (stopped || nodes >= nodeLimit || ((nodes & 1023) == 0 && timeManager != null
+                && timeManager.hardLimitReached(System.nanoTime())))) {
+            aborted = true;
+        }
+        return aborted;
+    }
+
+    private int alphaBeta(int depth, int ply, int alpha, int beta, boolean allowNull) {
+        pvLength[ply] = ply;
+        if (ply > 0) {
+            if (pos.isFiftyMoveDraw() || pos.repetitions() > 0) return 0;
+            // Mate distance pruning: no line from here can beat a mate already found nearer the root.
+            alpha = Math.max(alpha, -MATE + ply);
+            beta = Math.min(beta, MATE - ply - 1);
+            if (alpha >= beta) return alpha;
+        }
+        boolean inCheck = pos.inCheck();
+        if (inCheck) depth++;
+        if (depth <= 0) return quiesce(ply, alpha, beta);
+        if (ply >= MAX_PLY) return pos.evaluate();
+        if (checkAbort()) return 0;
+        nodes++;
+        boolean pvNode = beta - alpha > 1;
+
+        long key = pos.getKey();
+        long entry = tt.probe(key);
+        int ttMove = Position.NO_MOVE;
+        if (entry != 0) {
+            ttMove = TranspositionTable.move(entry);
+            if (!pvNode && TranspositionTable.depth(entry) >= depth) {
+                int s = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && s >= beta)
+                        || (bound == TranspositionTable.UPPER && s <= alpha)) {
+                    return s;
+                }
+            }
+        }
+
+        int staticEval = inCheck ? -INFINITE : pos.evaluate();
+        if (!pvNode && !inCheck) {
+            // Razoring: hopeless near the leaves, so check the captures only.
+            if (options.razoring && depth <= 2 && staticEval + RAZOR_MARGIN * depth <= alpha) {
+                int s = quiesce(ply, alpha, beta);
+                if (s <= alpha) return s;
+            }
+            // Null move: if passing still beats beta, a real move surely would. Not tried with only
+            // king and pawns, where passing is often the best move there is (zugzwang), nor twice
+            // in a row.
+            if (options.nullMove && allowNull && depth >= 3 && staticEval >= beta
+                    && pos.hasNonPawnMaterial(pos.whiteToMove())) {
+                int r = depth >= 7 ? 3 : 2;
+                pos.makeNullMove();
+                int s = -alphaBeta(depth - 1 - r, ply + 1, -beta, -beta + 1, false);
+                pos.unmakeNullMove();
+                if (aborted) return 0;
+                if (s >= beta) return s >= MATE_BOUND ? beta : s;
+            }
+        }
+        // Futility: this close to the leaves, quiet moves cannot bring the score back up to alpha.
+        boolean futile = options.futility && !pvNode && !inCheck && depth < FUTILITY_MARGIN.length
+                && Math.abs(alpha) < MATE_BOUND && staticEval + FUTILITY_MARGIN[depth] <= alpha;
+
+        int[] list = moves[ply];
+        int n = pos.generateMoves(list);
+        scoreMoves(ply, n, ttMove);
+        int origAlpha = alpha;
+        int best = -INFINITE;
+        int bestMoveHere = Position.NO_MOVE;
+        int legal = 0;
+        for (int i = 0; i < n; i++) {
+            int move = pickMove(ply, i, n);
+            if (!pos.isLegal(move)) continue;
+            if (ply == 0 && excludedLines > 0 && isExcluded(move)) continue;
+            legal++;
+            int piece = pos.pieceAt(Position.from(move));
+            int to = Position.to(move);
+            boolean quiet = pos.pieceAt(to) == Position.EMPTY;
+            pos.makeMove(move);
+            boolean givesCheck = pos.inCheck();
+            if (futile && quiet && legal > 1 && !givesCheck) {
+                pos.unmakeMove(move);
+                continue;
+            }
+            int score;
+            if (legal == 1) {
+                score = -alphaBeta(depth - 1, ply + 1, -beta, -alpha, true);
+            } else {
+                int reduction = 0;
+                if (options.lateMoveReductions && depth >= 3 && legal > 3 && quiet && !inCheck
+                        && !givesCheck && move != killers[ply][0] && move != killers[ply][1]) {
+                    reduction = reduction(depth, legal, history[piece][to]);
+                }
+                score = -alphaBeta(depth - 1 - reduction, ply + 1, -alpha - 1, -alpha, true);
+                if (reduction > 0 && score > alpha) {
+                    score = -alphaBeta(depth - 1, ply + 1, -alpha - 1, -alpha, true);
+                }
+                if (score > alpha && score < beta) {
+                    score = -alphaBeta(depth - 1, ply + 1, -beta, -alpha, true);
+                }
+            }
+            pos.unmakeMove(move);
+            if (aborted) return 0;
+
+            if (score > best) {
+                best = score;
+                bestMoveHere = move;
+                if (score > alpha) {
+                    alpha = score;
+                    pv[ply][ply] = move;
+                    System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+                    pvLength[ply] = Math.max(ply + 1, pvLength[ply + 1]);
+                    if (score >= beta) {
+                        if (quiet) rememberCutoff(ply, move, piece, to, depth);
+                        break;
+                    }
+                }
+            }
+        }
+        if (legal == 0) return inCheck ? -MATE + ply : 0;
+
+        int bound = best >= beta ? TranspositionTable.LOWER
+                : best > origAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        // With root moves left out, the root's result is not the position's.
+        if (ply > 0 || excludedLines == 0) tt.store(key, bestMoveHere, toTable(best, ply), depth, bound);
+        return best;
+    }
+
+    // How many plies to cut from a late quiet move. Moves with a good history are reduced less,
+    // moves that have never caused a cutoff more.
+    private static int reduction(int depth, int moveNumber, int historyScore) {
+        int r = (moveNumber > 10 && depth >= 6) ? 2 : 1;
+        if (historyScore > HISTORY_MAX / 4) r--;
+        else if (historyScore == 0 && moveNumber > 6) r++;
+        return Math.max(0, Math.min(r, depth - 2));
+    }
+
+    private void rememberCutoff(int ply, int move, int piece, int to, int depth) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        history[piece][to] += depth * depth;
+        if (history[piece][to] > HISTORY_MAX) {
+            for (int[] row : history) {
+                for (int i = 0; i < row.length; i++) row[i] /= 2;
+            }
+        }
+    }
+
+    // Searches captures only until the position is quiet, so the evaluation is never taken in the
+    // middle of an exchange. The side to move may always "stand pat" on the static evaluation.
+    private int quiesce(int ply, int alpha, int beta) {
+        if (checkAbort()) return 0;
+        nodes++;
+        int standPat = pos.evaluate();
+        if (ply >= MAX_PLY || standPat >= beta) return standPat;
+        if (standPat > alpha) alpha = standPat;
+
+        int[] list = moves[ply];
+        int[] order = scores[ply];
+        int n = pos.generateMoves(list);
+        int captures = 0;
+        for (int i = 0; i < n; i++) {
+            int move = list[i];
+            int victim = pos.pieceAt(Position.to(move));
+            if (victim == Position.EMPTY) continue;
+            list[captures] = move;
+            // Most valuable victim first, then least valuable attacker.
+            order[captures++] = Position.type(victim) * 8 - Position.type(pos.pieceAt(Position.from(move)));
+        }
+        int best = standPat;
+        for (int i = 0; i < captures; i++) {
+            int move = pickMove(ply, i, captures);
+            if (options.seePruning && pos.see(move) < 0) continue;
+            if (!pos.isLegal(move)) continue;
+            pos.makeMove(move);
+            int score = -quiesce(ply + 1, -beta, -alpha);
+            pos.unmakeMove(move);
+            if (aborted) return 0;
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (score >= beta) break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private void scoreMoves(int ply, int n, int ttMove) {
+        int[] list = moves[ply];
+        int[] order = scores[ply];
+        for (int i = 0; i < n; i++) {
+            int move = list[i];
+            int piece = pos.pieceAt(Position.from(move));
+            int victim = pos.pieceAt(Position.to(move));
+            if (move == ttMove) {
+                order[i] = TT_MOVE_SCORE;
+            } else if (victim != Position.EMPTY) {
+                int see = pos.see(move);
+                order[i] = see >= 0
+                        ? GOOD_CAPTURE_SCORE + Position.type(victim) * 8 - Position.type(piece)
+                        : BAD_CAPTURE_SCORE + see;
+            } else if (move == killers[ply][0]) {
+                order[i] = KILLER_SCORE + 1;
+            } else if (move == killers[ply][1]) {
+                order[i] = KILLER_SCORE;
+            } else {
+                order[i] = history[piece][Position.to(move)];
+            }
+        }
+    }
+
+    // Selection sort step: swaps the best-scored remaining move into slot i and returns it.
+    private int pickMove(int ply, int i, int n) {
+        int[] list = moves[ply];
+        int[] order = scores[ply];
+        int best = i;
+        for (int j = i + 1; j < n; j++) {
+            if (order[j] > order[best]) best = j;
+        }
+        int move = list[best];
+        list[best] = list[i];
+        list[i] = move;
+        int s = order[best];
+        order[best] = order[i];
+        order[i] = s;
+        return move;
+    }
+
+    // Mate scores are stored relative to the node, not the root, so they stay right when the same
+    // position turns up at another ply.
+    private static int toTable(int score, int ply) {
+        if (score >= MATE_BOUND) return score + ply;
+        if (score <= -MATE_BOUND) return score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= MATE_BOUND) return score - ply;
+        if (score <= -MATE_BOUND) return score + ply;
+        return score;
+    }
+}
@@ -0,0 +1,5 @@
+// Told about the progress of a Search after every completed iteration of iterative deepening.
+public interface SearchListener {
+    // pv holds the principal variation in pv[0..pvLength-1]; copy it if it must be kept.
+    void iterationDone(int depth, int score, long nodes, long elapsedNanos, int[] pv, int pvLength);
+}
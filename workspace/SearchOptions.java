@@ -0,0 +1,41 @@
+// Switches for the selective parts of Search, so each can be turned off for A/B benchmarks (see
+// Bench). Everything is on by default.
+public class SearchOptions {
+    public boolean nullMove = true;
+    public boolean lateMoveReductions = true;
+    public boolean futility = true;
+    public boolean razoring = true;
+    public boolean aspiration = true;
+    // Skip captures that lose material (by static exchange evaluation) in the quiescence search.
+    public boolean seePruning = true;
+
+    public SearchOptions copy() {
+        SearchOptions o = new SearchOptions();
+        o.nullMove = nullMove;
+        o.lateMoveReductions = lateMoveReductions;
+        o.futility = futility;
+        o.razoring = razoring;
+        o.aspiration = aspiration;
+        o.seePruning = seePruning;
+        return o;
+    }
+
+    // Turns an option off by name (as printed by toString) and returns false for unknown names.
+    public boolean disable(String name) {
+        switch (name) {
+            case "null": nullMove = false; return true;
+            case "lmr": lateMoveReductions = false; return true;
+            case "futility": futility = false; return true;
+            case "razoring": razoring = false; return true;
+            case "aspiration": aspiration = false; return true;
+            case "see": seePruning = false; return true;
+            default: return false;
+        }
+    }
+
+    public String toString() {
+        return (nullMove ? "+" : "-") + "null " + (lateMoveReductions ? "+" : "-") + "lmr "
+                + (futility ? "+" : "-") + "futility " + (razoring ? "+" : "-") + "razoring "
+                + (aspiration ? "+" : "-") + "aspiration " + (seePruning ? "+" : "-") + "see";
+    }
+}
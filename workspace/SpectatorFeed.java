@@ -0,0 +1,107 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Fans the moves of one game out to its spectators as compact binary frames. Moves are appended to
+// a pending batch; flush() seals the batch into one read-only byte array and hands every subscriber
+// its own view of that same array, so a batch costs one copy however many spectators are watching
+// and nobody holds a copy of the board. A spectator that joins gets a snapshot built from the FEN.
+//
+// Frames (big-endian):
+//   'S' game:int whiteMillis:int blackMillis:int fenLength:short fen:ASCII   snapshot on join
+//   'M' game:int move:short whiteMillis:int blackMillis:int                  a move (15 bytes)
+//   'E' game:int result:byte reasonLength:byte reason:ASCII                  game over
+// where move is Position's from | to << 6 and result is 1 for 1-0, 2 for 0-1 and 3 for a draw.
+public class SpectatorFeed {
+    public static final byte SNAPSHOT = 'S';
+    public static final byte MOVE = 'M';
+    public static final byte OVER = 'E';
+
+    // Receives sealed batches. Implementations must not modify the buffer's contents.
+    public interface Subscriber {
+        // Returns false if the subscriber cannot keep up and should be dropped.
+        boolean deliver(ByteBuffer batch);
+    }
+
+    private final int gameId;
+    private final List<Subscriber> subscribers = new ArrayList<Subscriber>();
+    private ByteBuffer pending = ByteBuffer.allocate(256);
+
+    public SpectatorFeed(int gameId) {
+        this.gameId = gameId;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public boolean hasPending() {
+        return pending.position() > 0;
+    }
+
+    // Adds s and sends it a snapshot of game. Pending moves are flushed to the existing subscribers
+    // first, so the newcomer never sees a move that its snapshot already contains.
+    public void subscribe(Subscriber s, GameSession game, long now) {
+        flush();
+        byte[] fen = game.getPosition().toFen().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer snapshot = ByteBuffer.allocate(15 + fen.length);
+        snapshot.put(SNAPSHOT).putInt(gameId)
+                .putInt((int) game.getClock(true).getRemainingMillis(now))
+                .putInt((int) game.getClock(false).getRemainingMillis(now))
+                .putShort((short) fen.length).put(fen);
+        if (game.isOver()) snapshot = withOver(snapshot, game);
+        snapshot.flip();
+        if (s.deliver(snapshot.asReadOnlyBuffer())) subscribers.add(s);
+    }
+
+    public void unsubscribe(Subscriber s) {
+        subscribers.remove(s);
+    }
+
+    public void moveMade(int move, long whiteMillis, long blackMillis) {
+        ensure(15);
+        pending.put(MOVE).putInt(gameId).putShort((short) move)
+                .putInt((int) whiteMillis).putInt((int) blackMillis);
+    }
+
+    public void gameOver(GameSession game) {
+        pending = withOver(pending, game);
+    }
+
+    // Sends the pending batch to every subscriber, dropping those that have fallen too far behind.
+    public void flush() {
+        if (pending.position() == 0) return;
+        byte[] batch = new byte[pending.position()];
+        pending.flip();
+        pending.get(batch);
+        pending.clear();
+        ByteBuffer shared = ByteBuffer.wrap(batch).asReadOnlyBuffer();
+        for (int i = subscribers.size() - 1; i >= 0; i--) {
+            if (!subscribers.get(i).deliver(shared.duplicate())) {
+                subscribers.set(i, subscribers.get(subscribers.size() - 1));
+                subscribers.remove(subscribers.size() - 1);
+            }
+        }
+    }
+
+    private ByteBuffer withOver(ByteBuffer buf, GameSession game) {
+        byte[] reason = game.getReason().getBytes(StandardCharsets.US_ASCII);
+        String result = game.getResult();
+        byte code = (byte) (result.equals(GameSession.WHITE_WINS) ? 1 : result.equals(GameSession.BLACK_WINS) ? 2 : 3);
+        if (buf.remaining() < 7 + reason.length) buf = grow(buf, 7 + reason.length);
+        buf.put(OVER).putInt(gameId).put(code).put((byte) reason.length).put(reason);
+        return buf;
+    }
+
+    private void ensure(int bytes) {
+        if (pending.remaining() < bytes) pending = grow(pending, bytes);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buf, int bytes) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes));
+        buf.flip();
+        bigger.put(buf);
+        return bigger;
+    }
+}
@@ -24,7 +24,7 @@ public class StartMenu implements Runnable {
         // Set window properties
         startWindow.setLocation(300,100);
         startWindow.setResizable(false);
-        startWindow.setSize(260, 240);
+        startWindow.setSize(260, 270);
         
         Box components = Box.createVerticalBox();
         startWindow.add(components);
@@ -93,14 +93,31 @@ public class StartMenu implements Runnable {
         
         timerSettings.add(hours);
         timerSettings.add(Box.createHorizontalStrut(10));
-        timerSettings.add(seconds);
-        timerSettings.add(Box.createHorizontalStrut(10));
         timerSettings.add(minutes);
+        timerSettings.add(Box.createHorizontalStrut(10));
+        timerSettings.add(seconds);
         
         timerSettings.add(Box.createVerticalGlue());
         
         components.add(timerSettings);
         
+        // Per-move bonus: Fischer increment or Bronstein delay, in seconds
+        final JComboBox<String> bonus = new JComboBox<String>(minSecInts);
+        final JComboBox<String> bonusMode = 
+                new JComboBox<String>(new String[] {"Increment","Delay"});
+        
+        Box bonusSettings = Box.createHorizontalBox();
+        
+        bonus.setMaximumSize(bonus.getPreferredSize());
+        bonusMode.setMaximumSize(bonusMode.getPreferredSize());
+        
+        bonusSettings.add(new JLabel("+"));
+        bonusSettings.add(bonus);
+        bonusSettings.add(Box.createHorizontalStrut(10));
+        bonusSettings.add(bonusMode);
+        
+        components.add(bonusSettings);
+        
         // Buttons
         Box buttons = Box.createHorizontalBox();
         final JButton quit = new JButton("Quit");
@@ -119,7 +136,9 @@ public class StartMenu implements Runnable {
                         "To begin a new game, input player names\n" +
                         "next to the pieces. Set the clocks and\n" +
                         "click \"Start\". Setting the timer to all\n" +
-                        "zeroes begins a new untimed game.",
+                        "zeroes begins a new untimed game. The\n" +
+                        "\"+\" setting adds an increment or a delay\n" +
+                        "(in seconds) to every move.",
                         "How to play",
                         JOptionPane.PLAIN_MESSAGE);
             }
@@ -134,8 +153,11 @@ public class StartMenu implements Runnable {
                 int hh = Integer.parseInt((String) hours.getSelectedItem());
                 int mm = Integer.parseInt((String) minutes.getSelectedItem());
                 int ss = Integer.parseInt((String) seconds.getSelectedItem());
+                int bonusSecs = Integer.parseInt((String) bonus.getSelectedItem());
+                boolean delay = bonusMode.getSelectedIndex() == 1;
                 
-                new GameWindow(bn, wn, hh, mm, ss);
+                new GameWindow(bn, wn, hh, mm, ss,
+                        delay ? 0 : bonusSecs, delay ? bonusSecs : 0);
                 startWindow.dispose();
             }
           });
@@ -0,0 +1,90 @@
+// Decides how long the engine may think about one move. From the side's remaining time, increment
+// and delay it sets a soft limit (the usual time to spend, checked between iterations) and a hard
+// limit (never exceeded, checked inside the search). The soft limit grows when the search fails low
+// or keeps changing its mind, and shrinks once the best move has stayed the same for a while.
+//
+// Elapsed time comes from System.nanoTime, which is cheap enough to read every few thousand nodes;
+// nothing here involves the Swing timer.
+public class TimeManager {
+    // Assumed number of moves still to play when the time control does not say.
+    static final int DEFAULT_MOVES_TO_GO = 30;
+    // Kept in reserve for move transmission and GUI lag.
+    static final long OVERHEAD_MILLIS = 30;
+
+    private final long start;
+    private final long hardNanos;
+    private final long maxSoftNanos;
+    private long softNanos;
+    // Fixed-time searches use all of their time.
+    private final boolean fixed;
+
+    private int lastBestMove = Position.NO_MOVE;
+    private int stableIterations;
+
+    private TimeManager(long softMillis, long hardMillis, boolean fixed) {
+        start = System.nanoTime();
+        softNanos = softMillis * 1000000L;
+        hardNanos = hardMillis * 1000000L;
+        maxSoftNanos = Math.max(softNanos, hardNanos / 2);
+        this.fixed = fixed;
+    }
+
+    // Pre-condition: remainingMillis is the side's time left; movesToGo is the number of moves
+    // until the next time control, or 0 if there is none.
+    // Post-condition: returns a manager for one move, timed from now.
+    public static TimeManager forTime(long remainingMillis, long incrementMillis, long delayMillis,
+            int movesToGo) {
+        int moves = movesToGo > 0 ? Math.min(movesToGo, DEFAULT_MOVES_TO_GO) : DEFAULT_MOVES_TO_GO;
+        long usable = Math.max(1, remainingMillis - OVERHEAD_MILLIS);
+        // The delay is free time for every move; most of the increment can be spent too.
+        long base = usable / moves + incrementMillis * 3 / 4 + delayMillis;
+        long hard = Math.min(base * 5, usable / 3 + incrementMillis + delayMillis);
+        hard = Math.max(1, Math.min(hard, usable));
+        return new TimeManager(Math.min(base, hard), hard, false);
+    }
+
+    // Plans the next move for the side owning clock, reading it at the System.nanoTime value now.
+    public static TimeManager forClock(Clock clock, long now) {
+        return forTime(clock.getRemainingMillis(now), clock.getIncrementMillis(), clock.getDelayMillis(), 0);
+    }
+
+    public static TimeManager forClock(Clock clock) {
+        return forClock(clock, System.nanoTime());
+    }
+
+    // Thinks for exactly the given time (e.g. UCI "go movetime").
+    public static TimeManager fixed(long millis) {
+        return new TimeManager(millis, millis, true);
+    }
+
+    public long elapsedNanos(long now) {
+        return now - start;
+    }
+
+    public boolean hardLimitReached(long now) {
+        return now - start >= hardNanos;
+    }
+
+    // The root search failed low: the expected move is worse than thought, so allow more time.
+    public void failedLow() {
+        softNanos = Math.min(maxSoftNanos, softNanos * 2);
+    }
+
+    // Called after each completed iteration with its best move. Returns true if the search should
+    // stop now rather than start another iteration it probably could not finish.
+    public boolean stopAfterIteration(int bestMove, long now) {
+        if (fixed) return false;
+        if (bestMove == lastBestMove) {
+            stableIterations++;
+        } else {
+            if (lastBestMove != Position.NO_MOVE) softNanos = Math.min(maxSoftNanos, softNanos * 13 / 10);
+            stableIterations = 0;
+        }
+        lastBestMove = bestMove;
+        long budget = softNanos;
+        if (stableIterations >= 4) budget = budget * 2 / 5;
+        else if (stableIterations >= 2) budget = budget * 7 / 10;
+        // The next iteration usually takes longer than everything so far.
+        return now - start >= budget / 2;
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.Arrays;
+
+// Hashed timing wheel: one scheduler for the flag-fall deadlines of every running game. Time is cut
+// into ticks and each deadline hangs in the slot of its tick (modulo the wheel size) on an intrusive
+// doubly linked list, so scheduling, rescheduling and cancelling are O(1) and advancing the wheel
+// only looks at the slots that have come round. Nothing runs for a clock until it can actually have
+// expired; deadlines further away than one rotation simply stay in their slot until their round.
+//
+// Deadlines are System.nanoTime readings (see Clock.getDeadline). A timeout fires at the first tick
+// boundary at or after its deadline, never before it. Not thread-safe: use it from one thread.
+public class TimingWheel {
+    // A scheduled callback. Keep it to reschedule or cancel it.
+    public static final class Timeout {
+        private final Runnable task;
+        private long deadlineTick;
+        private Timeout prev;
+        private Timeout next;
+        private boolean scheduled;
+        // Bumped by every cancel and reschedule, so advance can tell that a due timeout it has
+        // collected was cancelled or moved by an earlier callback of the same batch.
+        private int generation;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        public boolean isScheduled() {
+            return scheduled;
+        }
+    }
+
+    private final long tickNanos;
+    private final long origin;
+    private final Timeout[] slots;
+    private final int mask;
+    // The first tick not yet processed.
+    private long currentTick;
+    private int size;
+    // The timeouts advance has found due, with their generations when found. Reused between calls.
+    private Timeout[] due = new Timeout[16];
+    private int[] dueGenerations = new int[16];
+
+    // Pre-condition: slotCount is a power of two; now is a System.nanoTime reading.
+    public TimingWheel(long tickMillis, int slotCount, long now) {
+        if (Integer.bitCount(slotCount) != 1) throw new IllegalArgumentException("slotCount must be a power of two");
+        this.tickNanos = tickMillis * 1000000L;
+        this.origin = now;
+        this.slots = new Timeout[slotCount];
+        this.mask = slotCount - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Runs task once the System.nanoTime reading deadline has passed.
+    public Timeout schedule(long deadline, Runnable task) {
+        Timeout t = new Timeout(task);
+        reschedule(t, deadline);
+        return t;
+    }
+
+    // Moves t to a new deadline, scheduling it again if it had fired or been cancelled.
+    // A deadline of Long.MAX_VALUE (a stopped clock) just cancels it.
+    public void reschedule(Timeout t, long deadline) {
+        cancel(t);
+        if (deadline == Long.MAX_VALUE) return;
+        long offset = deadline - origin;
+        long tick = offset <= 0 ? 0 : (offset + tickNanos - 1) / tickNanos;
+        if (tick < currentTick) tick = currentTick;
+        t.deadlineTick = tick;
+        int slot = (int) (tick & mask);
+        t.next = slots[slot];
+        if (t.next != null) t.next.prev = t;
+        t.prev = null;
+        slots[slot] = t;
+        t.scheduled = true;
+        size++;
+    }
+
+    public void cancel(Timeout t) {
+        t.generation++;
+        if (!t.scheduled) return;
+        if (t.prev != null) t.prev.next = t.next;
+        else slots[(int) (t.deadlineTick & mask)] = t.next;
+        if (t.next != null) t.next.prev = t.prev;
+        t.prev = null;
+        t.next = null;
+        t.scheduled = false;
+        size--;
+    }
+
+    // Fires every timeout whose deadline has passed by now and returns how many fired. Callbacks
+    // may schedule, reschedule or cancel timeouts, including ones due in the same call: a due
+    // timeout that an earlier callback cancelled or rescheduled does not fire. Callbacks must not
+    // call advance.
+    public int advance(long now) {
+        long target = (now - origin) / tickNanos;
+        if (target < currentTick) return 0;
+        // After a long pause every slot is visited once; otherwise only the ticks that passed.
+        long last = Math.min(target, currentTick + mask);
+        int count = 0;
+        for (long tick = currentTick; tick <= last; tick++) {
+            Timeout t = slots[(int) (tick & mask)];
+            while (t != null) {
+                Timeout next = t.next;
+                if (t.deadlineTick <= target) {
+                    cancel(t);
+                    if (count == due.length) {
+                        due = Arrays.copyOf(due, count * 2);
+                        dueGenerations = Arrays.copyOf(dueGenerations, count * 2);
+                    }
+                    due[count] = t;
+                    dueGenerations[count] = t.generation;
+                    count++;
+                }
+                t = next;
+            }
+        }
+        currentTick = target + 1;
+
+        int fired = 0;
+        for (int i = 0; i < count; i++) {
+            Timeout t = due[i];
+            due[i] = null;
+            if (t.generation != dueGenerations[i]) continue;
+            t.task.run();
+            fired++;
+        }
+        return fired;
+    }
+
+    // Nanoseconds from now until the next tick is due, or Long.MAX_VALUE if nothing is scheduled.
+    public long nanosUntilNextTick(long now) {
+        if (size == 0) return Long.MAX_VALUE;
+        return Math.max(0, origin + currentTick * tickNanos - now);
+    }
+}
@@ -0,0 +1,65 @@
+// Remembers search results by position hash so that positions reached by different move orders are
+// only searched once, and so the best move from an earlier iteration is tried first. Each entry is
+// two longs in one flat array: the key, and the move, score, depth and bound packed together.
+// Not thread-safe; each searching thread owns its table.
+public class TranspositionTable {
+    public static final int EXACT = 0;
+    // The score is at least this much (the search failed high).
+    public static final int LOWER = 1;
+    // The score is at most this much (the search failed low).
+    public static final int UPPER = 2;
+
+    private final long[] table;
+    private final int mask;
+
+    // Pre-condition: entries is a power of two.
+    public TranspositionTable(int entries) {
+        if (Integer.bitCount(entries) != 1) {
+            throw new IllegalArgumentException("Table size must be a power of two: " + entries);
+        }
+        table = new long[entries * 2];
+        mask = entries - 1;
+    }
+
+    // Creates the largest table with a power of two entries that fits in the given megabytes.
+    public static TranspositionTable withMegabytes(int megabytes) {
+        long entries = Math.max(1, megabytes * 1024L * 1024L / 16);
+        return new TranspositionTable((int) Math.min(1 << 30, Long.highestOneBit(entries)));
+    }
+
+    // Returns the packed data for key, or 0 when the table holds nothing for it. Unpack with
+    // move(), score(), depth() and bound().
+    public long probe(long key) {
+        int i = ((int) key & mask) * 2;
+        return table[i] == key ? table[i + 1] : 0;
+    }
+
+    public void store(long key, int move, int score, int depth, int bound) {
+        int i = ((int) key & mask) * 2;
+        // Keep a deeper result for the same position unless the new one is exact.
+        if (table[i] == key && depth(table[i + 1]) > depth && bound != EXACT) return;
+        table[i] = key;
+        table[i + 1] = (move & 0xFFFL) | ((long) (score & 0xFFFF) << 12)
+                | ((long) (depth & 0xFF) << 28) | ((long) bound << 36) | (1L << 38);
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(table, 0);
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0xFFF);
+    }
+
+    public static int score(long data) {
+        return (short) (data >>> 12);
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> 28) & 0xFF);
+    }
+
+    public static int bound(long data) {
+        return (int) ((data >>> 36) & 3);
+    }
+}
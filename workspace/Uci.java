@@ -0,0 +1,238 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+// A second entry point that runs the engine without any Swing window, speaking the UCI protocol on
+// stdin/stdout so it can be driven by standard tournament managers. The main thread only reads
+// commands; every search runs on its own thread, so "stop" and "isready" are answered while the
+// engine is thinking and a stop takes effect within a few thousand nodes.
+//
+// Moves use coordinate notation (e2e4). This game has no castling, en passant or promotion, and
+// Rooks slide at most three squares, so moves that are only legal in standard chess are refused.
+public class Uci {
+    static final String NAME = "Chess";
+    static final int DEFAULT_HASH_MB = 16;
+
+    private final PrintStream out;
+    private Position position = Position.startingPosition();
+    private TranspositionTable tt = TranspositionTable.withMegabytes(DEFAULT_HASH_MB);
+    private final SearchOptions options = new SearchOptions();
+
+    private Thread searchThread;
+    private Search search;
+    // For "go infinite" the best move may only be sent after "stop".
+    private boolean waitForStop;
+
+    public Uci(PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        new Uci(System.out).run(new BufferedReader(new InputStreamReader(System.in)));
+    }
+
+    // Pre-condition: in delivers UCI commands, one per line.
+    // Post-condition: returns after "quit" or the end of the input, with no search running.
+    public void run(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] words = line.trim().split("\\s+");
+            try {
+                if (!execute(words)) return;
+            } catch (IllegalArgumentException e) {
+                // A bad number or FEN spoils this command only; the GUI keeps its engine.
+                send("info string cannot read " + line.trim() + ": " + e.getMessage());
+            }
+        }
+        stopSearch();
+    }
+
+    // Carries out one command. Returns false on "quit".
+    private boolean execute(String[] words) {
+        switch (words[0]) {
+            case "uci":
+                send("id name " + NAME);
+                send("id author the Chess team");
+                send("option name Hash type spin default " + DEFAULT_HASH_MB + " min 1 max 1024");
+                send("uciok");
+                break;
+            case "isready":
+                send("readyok");
+                break;
+            case "setoption":
+                setOption(words);
+                break;
+            case "ucinewgame":
+                stopSearch();
+                tt.clear();
+                position = Position.startingPosition();
+                break;
+            case "position":
+                stopSearch();
+                setPosition(words);
+                break;
+            case "go":
+                stopSearch();
+                go(words);
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "quit":
+                stopSearch();
+                return false;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    private synchronized void send(String message) {
+        out.println(message);
+        out.flush();
+    }
+
+    // setoption name Hash value <megabytes>
+    private void setOption(String[] words) {
+        if (words.length == 5 && words[2].equalsIgnoreCase("Hash") && words[3].equals("value")) {
+            int megabytes = Integer.parseInt(words[4]);
+            stopSearch();
+            tt = TranspositionTable.withMegabytes(Math.max(1, Math.min(1024, megabytes)));
+        }
+    }
+
+    // position [startpos | fen <fields>] [moves <move>...]
+    private void setPosition(String[] words) {
+        int i = 1;
+        Position p;
+        if (words.length > 1 && words[1].equals("fen")) {
+            StringBuilder fen = new StringBuilder();
+            for (i = 2; i < words.length && !words[i].equals("moves"); i++) {
+                fen.append(words[i]).append(' ');
+            }
+            p = Position.fromFen(fen.toString());
+        } else {
+            p = Position.startingPosition();
+            i = 2;
+        }
+        if (i < words.length && words[i].equals("moves")) {
+            for (i++; i < words.length; i++) {
+                int move = p.parseMove(words[i]);
+                if (move == Position.NO_MOVE) {
+                    send("info string illegal move " + words[i]);
+                    break;
+                }
+                p.makeMove(move);
+            }
+        }
+        position = p;
+    }
+
+    // The number at words[i]. Throws NumberFormatException if there is none.
+    private static long value(String[] words, int i) {
+        if (i >= words.length) throw new NumberFormatException("missing value");
+        return Long.parseLong(words[i]);
+    }
+
+    // go [wtime|btime|winc|binc|movestogo|depth|nodes|movetime <n>]... [infinite|ponder] [searchmoves <move>...]
+    private void go(String[] words) {
+        long time = -1;
+        long inc = 0;
+        int movesToGo = 0;
+        int depth = Search.MAX_PLY;
+        long nodes = Long.MAX_VALUE;
+        long moveTime = -1;
+        boolean infinite = false;
+        boolean white = position.whiteToMove();
+        for (int i = 1; i < words.length; i++) {
+            switch (words[i]) {
+                // Pondering is not offered, so a ponder search just runs until stop.
+                case "infinite":
+                case "ponder": infinite = true; break;
+                case "wtime": if (white) time = value(words, ++i); else i++; break;
+                case "btime": if (!white) time = value(words, ++i); else i++; break;
+                case "winc": if (white) inc = value(words, ++i); else i++; break;
+                case "binc": if (!white) inc = value(words, ++i); else i++; break;
+                case "movestogo": movesToGo = (int) value(words, ++i); break;
+                case "depth": depth = (int) value(words, ++i); break;
+                case "nodes": nodes = value(words, ++i); break;
+                case "movetime": moveTime = value(words, ++i); break;
+                case "searchmoves":
+                    // Not supported; skip its moves up to the next keyword.
+                    while (i + 1 < words.length && words[i + 1].length() >= 4
+                            && Character.isDigit(words[i + 1].charAt(1))) {
+                        i++;
+                    }
+                    break;
+                default: break;
+            }
+        }
+
+        if (!position.hasLegalMove()) {
+            send("bestmove 0000");
+            return;
+        }
+        final Search s = new Search(position, tt, options);
+        s.setNodeLimit(nodes);
+        if (moveTime >= 0) {
+            s.setTimeManager(TimeManager.fixed(moveTime));
+        } else if (time >= 0 && !infinite) {
+            s.setTimeManager(TimeManager.forTime(time, inc, 0, movesToGo));
+        }
+        s.setListener(new SearchListener() {
+            public void iterationDone(int d, int score, long n, long nanos, int[] pv, int pvLength) {
+                StringBuilder sb = new StringBuilder("info depth ").append(d).append(" score ");
+                if (Math.abs(score) >= Search.MATE_BOUND) {
+                    int plies = Search.MATE - Math.abs(score);
+                    sb.append("mate ").append(score > 0 ? (plies + 1) / 2 : -(plies / 2));
+                } else {
+                    sb.append("cp ").append(score);
+                }
+                long millis = nanos / 1000000;
+                sb.append(" nodes ").append(n).append(" nps ").append(n * 1000 / Math.max(1, millis))
+                        .append(" time ").append(millis).append(" pv");
+                for (int i = 0; i < pvLength; i++) sb.append(' ').append(Position.moveName(pv[i]));
+                send(sb.toString());
+            }
+        });
+        final int maxDepth = depth;
+        synchronized (this) {
+            search = s;
+            waitForStop = infinite;
+        }
+        searchThread = new Thread(new Runnable() {
+            public void run() {
+                int best = s.search(maxDepth);
+                synchronized (Uci.this) {
+                    while (waitForStop) {
+                        try {
+                            Uci.this.wait();
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                    }
+                }
+                send("bestmove " + Position.moveName(best));
+            }
+        }, "uci-search");
+        searchThread.start();
+    }
+
+    // Stops the running search, if any, and waits until it has sent its best move.
+    private void stopSearch() {
+        if (searchThread == null) return;
+        synchronized (this) {
+            search.stop();
+            waitForStop = false;
+            notifyAll();
+        }
+        try {
+            searchThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        searchThread = null;
+        search = null;
+    }
+}
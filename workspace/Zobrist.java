@@ -0,0 +1,33 @@
+// Random 64-bit keys for hashing positions. A position's key is the XOR of the key of every
+// (piece, square) pair on the board, plus SIDE when black is to move, so Position can update it
+// with a couple of XORs per move. The keys come from a fixed seed so that a hash means the same
+// position in every run (stored hashes stay valid between runs).
+public final class Zobrist {
+    // PIECE_SQUARE[piece][sq], indexed by the Position piece code.
+    static final long[][] PIECE_SQUARE = new long[16][64];
+    static final long SIDE;
+
+    static {
+        long seed = 0x5DEECE66DL;
+        for (int piece = 0; piece < 16; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                seed += 0x9E3779B97F4A7C15L;
+                PIECE_SQUARE[piece][sq] = mix(seed);
+            }
+        }
+        // EMPTY squares must not change the key.
+        PIECE_SQUARE[Position.EMPTY] = new long[64];
+        seed += 0x9E3779B97F4A7C15L;
+        SIDE = mix(seed);
+    }
+
+    private Zobrist() {
+    }
+
+    // SplitMix64 finaliser.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
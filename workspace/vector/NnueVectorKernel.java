@@ -0,0 +1,33 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// NnueEvaluator's dense layers with the Vector API: eight weights at a time are widened from bytes
+// to ints and multiplied into a running vector of sums, which is added across once per output.
+// Needs --add-modules jdk.incubator.vector to compile and run; NnueEvaluator loads it by name and
+// falls back to its scalar loop without it.
+class NnueVectorKernel implements NnueEvaluator.Kernel {
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_64;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_256;
+
+    public void dense(int[] in, byte[] weights, int[] bias, int[] out) {
+        int n = in.length;
+        int bound = INTS.loopBound(n);
+        for (int o = 0; o < out.length; o++) {
+            int base = o * n;
+            IntVector acc = IntVector.zero(INTS);
+            int i = 0;
+            for (; i < bound; i += INTS.length()) {
+                IntVector w = (IntVector) ByteVector.fromArray(BYTES, weights, base + i)
+                        .convertShape(VectorOperators.B2I, INTS, 0);
+                acc = acc.add(IntVector.fromArray(INTS, in, i).mul(w));
+            }
+            int sum = acc.reduceLanes(VectorOperators.ADD);
+            for (; i < n; i++) {
+                sum += in[i] * weights[base + i];
+            }
+            out[o] = NnueEvaluator.clip((bias[o] + sum) >> NnueNetwork.SHIFT);
+        }
+    }
+}